@@ -0,0 +1,156 @@
+package tp.db.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import tp.db.Main;
+import tp.db.dao.*;
+import tp.db.models.*;
+import tp.db.models.Thread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end DAO calls against a local PostgreSQL. Every fork truncates the database and
+ * loads the same dataset, so bench.url has no default and must name a scratch database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBenchmark {
+    private static final String FORUM = "bench";
+    private static final int USERS = 200;
+    private static final int THREADS = 20;
+    private static final int ROOTS = 50;
+    private static final int REPLIES = 20;
+
+    private ConfigurableApplicationContext context;
+    private UserDAO userDAO;
+    private ThreadDAO threadDAO;
+    private PostDAO postDAO;
+    private long postId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String url = System.getProperty("bench.url");
+        if (url == null) {
+            throw new IllegalStateException("Set bench.url to a scratch database: every fork " +
+                    "truncates it");
+        }
+        context = new SpringApplicationBuilder(Main.class).web(false).run(
+                "--spring.datasource.url=" + url,
+                "--spring.datasource.username=" + System.getProperty("bench.username", "docker"),
+                "--spring.datasource.password=" + System.getProperty("bench.password", "docker"));
+        userDAO = context.getBean(UserDAO.class);
+        threadDAO = context.getBean(ThreadDAO.class);
+        postDAO = context.getBean(PostDAO.class);
+
+        context.getBean(ServiceDAO.class).clear();
+        load(context.getBean(ForumDAO.class));
+    }
+
+    private void load(ForumDAO forumDAO) {
+        Random random = new Random(42);
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setNickname("user" + i);
+            user.setFullname("User " + i);
+            user.setEmail("user" + i + "@bench.local");
+            user.setAbout("About user " + i);
+            userDAO.createUser(user);
+        }
+
+        Forum forum = new Forum();
+        forum.setSlug(FORUM);
+        forum.setTitle("Benchmark forum");
+        forum.setUser("user0");
+        forumDAO.createForum(forum);
+
+        for (int t = 0; t < THREADS; t++) {
+            Thread thread = new Thread();
+            thread.setSlug("thread" + t);
+            thread.setTitle("Thread " + t);
+            thread.setMessage("Message of thread " + t);
+            thread.setAuthor("user" + random.nextInt(USERS));
+            threadDAO.createThread(FORUM, thread);
+
+            for (int r = 0; r < ROOTS; r++) {
+                List<Post> root = new ArrayList<>();
+                root.add(post(random, 0));
+                long parent = postDAO.createPost(thread.getSlug(), root).get(0).getId();
+
+                List<Post> replies = new ArrayList<>();
+                for (int p = 0; p < REPLIES; p++) {
+                    replies.add(post(random, parent));
+                }
+                for (Post reply : postDAO.createPost(thread.getSlug(), replies)) {
+                    postId = reply.getId();
+                }
+            }
+        }
+    }
+
+    private static Post post(Random random, long parent) {
+        Post post = new Post();
+        post.setAuthor("user" + random.nextInt(USERS));
+        post.setMessage("Message " + random.nextInt());
+        post.setParent(parent);
+        return post;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object postsFlat() {
+        return postDAO.getPostsBySlugOrId("thread7", 100, null, null, "flat", false);
+    }
+
+    @Benchmark
+    public Object postsTree() {
+        return postDAO.getPostsBySlugOrId("thread7", 100, null, null, "tree", false);
+    }
+
+    @Benchmark
+    public Object postsParentTree() {
+        return postDAO.getPostsBySlugOrId("thread7", 5, null, null, "parent_tree", false);
+    }
+
+    @Benchmark
+    public Object postById() {
+        return postDAO.getPostById(postId);
+    }
+
+    @Benchmark
+    public Object threadsByForum() {
+        return threadDAO.getThreadsByForumSlug(FORUM, 100, null, null, false);
+    }
+
+    @Benchmark
+    public Object usersByForum() {
+        return userDAO.getUsersByForumSlug(FORUM, 100, null, null, false);
+    }
+
+    @Benchmark
+    public Object threadBySlug() {
+        return threadDAO.getThreadBySlugOrId("thread7");
+    }
+
+    @Benchmark
+    public Object createPosts() {
+        List<Post> posts = new ArrayList<>();
+        Random random = new Random(postId);
+        for (int i = 0; i < 10; i++) {
+            posts.add(post(random, 0));
+        }
+        return postDAO.createPost("thread3", posts);
+    }
+}
@@ -0,0 +1,86 @@
+package tp.db.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import tp.db.dao.PostDAO;
+import tp.db.dao.ThreadDAO;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMapperBenchmark {
+    private PostDAO.PostRowMapper postMapper;
+    private ThreadDAO.ThreadRowMapper threadMapper;
+    private ResultSet postRow;
+    private ResultSet threadRow;
+
+    @Setup
+    public void setUp() {
+        postMapper = new PostDAO.PostRowMapper();
+        threadMapper = new ThreadDAO.ThreadRowMapper();
+
+        Timestamp created = Timestamp.valueOf("2017-10-18 12:34:56.789");
+
+        Map<String, Object> post = new HashMap<>();
+        post.put("id", 123456L);
+        post.put("author", "j.sparrow");
+        post.put("created", created);
+        post.put("forum", "pirate-stories");
+        post.put("is_edited", false);
+        post.put("message", "We should be afraid of the Kraken.");
+        post.put("parent", 123400L);
+        post.put("thread", 42);
+        postRow = row(post);
+
+        Map<String, Object> thread = new HashMap<>();
+        thread.put("id", 42);
+        thread.put("author", "j.sparrow");
+        thread.put("created", created);
+        thread.put("forum", "pirate-stories");
+        thread.put("message", "An urgent need to reveal the hiding place of Davy Jones.");
+        thread.put("slug", "jones-cache");
+        thread.put("title", "Davy Jones cache");
+        thread.put("votes", 17);
+        threadRow = row(thread);
+    }
+
+    private static ResultSet row(Map<String, Object> columns) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+                    Object value = columns.get((String) args[0]);
+                    switch (method.getName()) {
+                        case "getString":
+                        case "getTimestamp":
+                            return value;
+                        case "getInt":
+                            return ((Number) value).intValue();
+                        case "getLong":
+                            return ((Number) value).longValue();
+                        case "getBoolean":
+                            return value;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @Benchmark
+    public Object mapPost() throws SQLException {
+        return postMapper.mapRow(postRow, 0);
+    }
+
+    @Benchmark
+    public Object mapThread() throws SQLException {
+        return threadMapper.mapRow(threadRow, 0);
+    }
+}
@@ -0,0 +1,80 @@
+package tp.db.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import tp.db.models.*;
+import tp.db.models.Thread;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    private ObjectMapper mapper;
+    private Post post;
+    private Thread thread;
+    private PostFull postFull;
+
+    @Setup
+    public void setUp() {
+        mapper = new ObjectMapper();
+
+        post = new Post();
+        post.setId(123456L);
+        post.setAuthor("j.sparrow");
+        post.setCreated("2017-10-18T12:34:56.789Z");
+        post.setForum("pirate-stories");
+        post.setMessage("We should be afraid of the Kraken.");
+        post.setParent(123400L);
+        post.setThread(42);
+
+        thread = new Thread();
+        thread.setId(42);
+        thread.setAuthor("j.sparrow");
+        thread.setCreated("2017-10-18T12:34:56.789Z");
+        thread.setForum("pirate-stories");
+        thread.setMessage("An urgent need to reveal the hiding place of Davy Jones.");
+        thread.setSlug("jones-cache");
+        thread.setTitle("Davy Jones cache");
+        thread.setVotes(17);
+
+        User user = new User();
+        user.setNickname("j.sparrow");
+        user.setFullname("Captain Jack Sparrow");
+        user.setEmail("captaina@blackpearl.sea");
+        user.setAbout("This is the day you will always remember as the day you almost caught Captain Jack Sparrow!");
+
+        Forum forum = new Forum();
+        forum.setSlug("pirate-stories");
+        forum.setTitle("Pirate stories");
+        forum.setUser("j.sparrow");
+        forum.setPosts(200000);
+        forum.setThreads(200);
+
+        postFull = new PostFull();
+        postFull.setPost(post);
+        postFull.setAuthor(user);
+        postFull.setForum(forum);
+        postFull.setThread(thread);
+    }
+
+    @Benchmark
+    public byte[] writePost() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(post);
+    }
+
+    @Benchmark
+    public byte[] writeThread() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(thread);
+    }
+
+    @Benchmark
+    public byte[] writePostFull() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(postFull);
+    }
+}
@@ -0,0 +1,37 @@
+package tp.db.dao;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBuildBenchmark {
+    @State(Scope.Thread)
+    public static class Sort {
+        @Param({"flat", "tree", "parent_tree"})
+        public String sort;
+    }
+
+    @Benchmark
+    public String postsQuery(Sort sort) {
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        PostDAO.appendPostsQuery(42, 100, 123456L, null, sort.sort, true, sql, params);
+        return sql.toString();
+    }
+
+    @Benchmark
+    public String usersQuery() {
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        UserDAO.appendUsersQuery("pirate-stories", 100, "j.sparrow", null, true, sql, params);
+        return sql.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package tp.db.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Minimal JSON-over-HTTP client for the /api surface. Every call is timed and recorded
+ * under its endpoint template, e.g. "GET /api/thread/{slug_or_id}/posts?sort=tree".
+ */
+final class ApiClient {
+    private final String baseUrl;
+    private final LatencyStats stats;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    static final class Response {
+        final int status;
+        final JsonNode body;
+
+        private Response(int status, JsonNode body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    ApiClient(String baseUrl, LatencyStats stats) {
+        this.baseUrl = baseUrl;
+        this.stats = stats;
+    }
+
+    Response get(String endpoint, String path) {
+        return call(endpoint, "GET", path, null);
+    }
+
+    Response post(String endpoint, String path, Object body) {
+        return call(endpoint, "POST", path, body);
+    }
+
+    private Response call(String endpoint, String method, String path, Object body) {
+        long start = System.nanoTime();
+        int status = 0;
+        try {
+            HttpURLConnection con = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            con.setRequestMethod(method);
+            con.setRequestProperty("Accept", "application/json");
+            if (body != null) {
+                con.setDoOutput(true);
+                con.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream out = con.getOutputStream()) {
+                    mapper.writeValue(out, body);
+                }
+            }
+            status = con.getResponseCode();
+            InputStream in = status < 400 ? con.getInputStream() : con.getErrorStream();
+            byte[] content = in == null ? new byte[0] : readAll(in);
+            JsonNode json = content.length == 0 ? null : mapper.readTree(content);
+            return new Response(status, json);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            stats.record(endpoint, System.nanoTime() - start, status == 0 || status >= 500);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package tp.db.load;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import tp.db.Main;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Starts the server in-process once per execution mode (platform, then virtual) on a free port
+ * and runs the load harness against each, so both runs see the same data and client settings.
+ * Virtual threads need Java 21+, and Spring 4.3 needs java.lang opened on Java 9+:
+ *
+ *   java --add-opens java.base/java.lang=ALL-UNNAMED \
+ *       -cp benchmarks/target/benchmarks.jar tp.db.load.ExecutionModeComparison [options]
+ *
+ * Accepts the LoadHarness options (url and clear excepted; concurrency defaults to 256 so
+ * that the client outnumbers Tomcat's 200 workers) plus:
+ *   modes            modes to run, comma separated (platform,virtual)
+ *   max-concurrency  db.execution.max-concurrency for the virtual mode (pool size)
+ * Database settings come from the bench.url, bench.username and bench.password properties.
+ * Every run clears the database, so bench.url has no default and must name a scratch one.
+ */
+public final class ExecutionModeComparison {
+    private ExecutionModeComparison() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadHarness.parse(args);
+        options.putIfAbsent("concurrency", "256");
+        options.put("clear", "true");
+        String url = System.getProperty("bench.url");
+        if (url == null) {
+            throw new IllegalStateException("Set bench.url to a scratch database: every run " +
+                    "clears it");
+        }
+        System.setProperty("http.maxConnections", options.get("concurrency"));
+
+        for (String mode : options.getOrDefault("modes", "platform,virtual").split(",")) {
+            System.out.printf("%n##### db.execution.mode=%s%n", mode);
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(Main.class).run(
+                    "--server.port=0",
+                    "--db.execution.mode=" + mode,
+                    "--db.execution.max-concurrency=" + options.getOrDefault("max-concurrency", "0"),
+                    "--spring.datasource.url=" + url,
+                    "--spring.datasource.username=" + System.getProperty("bench.username", "docker"),
+                    "--spring.datasource.password=" + System.getProperty("bench.password", "docker"));
+            try {
+                int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer()
+                        .getPort();
+                Map<String, String> run = new HashMap<>(options);
+                run.put("url", "http://localhost:" + port);
+                new LoadHarness(run).run();
+            } finally {
+                context.close();
+            }
+        }
+    }
+}
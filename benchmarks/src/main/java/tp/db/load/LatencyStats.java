@@ -0,0 +1,55 @@
+package tp.db.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-endpoint latency histograms (microsecond resolution, up to one minute) and error counts.
+ */
+final class LatencyStats {
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    private static final class Endpoint {
+        private final Histogram latency = new ConcurrentHistogram(MAX_MICROS, 3);
+        private final LongAdder errors = new LongAdder();
+    }
+
+    void record(String endpoint, long nanos, boolean error) {
+        Endpoint stats = endpoints.computeIfAbsent(endpoint, name -> new Endpoint());
+        stats.latency.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_MICROS));
+        if (error) {
+            stats.errors.increment();
+        }
+    }
+
+    void reset() {
+        endpoints.clear();
+    }
+
+    void print(String phase, long elapsedNanos, PrintStream out) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%n%s phase, %.1f s%n", phase, seconds);
+        out.printf("%-44s %9s %7s %10s %9s %9s %9s %9s%n", "endpoint", "requests", "errors",
+                "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Map.Entry<String, Endpoint> entry : new TreeMap<>(endpoints).entrySet()) {
+            Histogram latency = entry.getValue().latency;
+            out.printf("%-44s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(),
+                    latency.getTotalCount(), entry.getValue().errors.sum(),
+                    latency.getTotalCount() / seconds,
+                    latency.getValueAtPercentile(50) / 1000.0,
+                    latency.getValueAtPercentile(99) / 1000.0,
+                    latency.getValueAtPercentile(99.9) / 1000.0,
+                    latency.getMaxValue() / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package tp.db.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import tp.db.models.Forum;
+import tp.db.models.Post;
+import tp.db.models.Thread;
+import tp.db.models.User;
+import tp.db.models.Vote;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Drives a running server over HTTP: a fill phase (users, forums, threads, nested posts,
+ * votes) followed by a timed mixed read phase, and prints per-endpoint throughput and
+ * latency percentiles for each phase.
+ *
+ * Options are passed as --name=value:
+ *   url          server address (http://localhost:5000)
+ *   concurrency  client threads (8)
+ *   clear        call /api/service/clear first, wiping the server's data (false)
+ *   users, forums, threads, posts, votes   fill sizes (1000, 20, 2000, 200000, 20000)
+ *   batch        posts per create request (100)
+ *   roots        share of new posts that start a new tree (0.2)
+ *   duration     read phase length in seconds (60)
+ *   limit        page size for listings in the read phase (100)
+ *   seed         random seed (42)
+ */
+public final class LoadHarness {
+    private static final String[] SORTS = {"flat", "tree", "parent_tree"};
+
+    private final Map<String, String> options;
+    private final LatencyStats stats = new LatencyStats();
+    private final ApiClient client;
+    private final int concurrency;
+    private final long seed;
+
+    private final List<String> users = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> forums = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> threads = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> posts = Collections.synchronizedList(new ArrayList<>());
+    private final ConcurrentMap<Integer, List<Long>> threadPosts = new ConcurrentHashMap<>();
+    private final LongAdder failures = new LongAdder();
+
+    LoadHarness(Map<String, String> options) {
+        this.options = options;
+        this.client = new ApiClient(option("url", "http://localhost:5000"), stats);
+        this.concurrency = intOption("concurrency", 8);
+        this.seed = Long.parseLong(option("seed", "42"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadHarness(parse(args)).run();
+    }
+
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException(String.format("Bad option %s", arg));
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(option(name, String.valueOf(defaultValue)));
+    }
+
+    void run() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            if (Boolean.parseBoolean(option("clear", "false"))) {
+                client.post("POST /api/service/clear", "/api/service/clear", null);
+            }
+
+            long start = System.nanoTime();
+            fill(executor);
+            stats.print("Fill", System.nanoTime() - start, System.out);
+            stats.reset();
+
+            start = System.nanoTime();
+            read(executor, TimeUnit.SECONDS.toNanos(intOption("duration", 60)));
+            stats.print("Read", System.nanoTime() - start, System.out);
+
+            if (failures.sum() > 0) {
+                System.out.printf("%n%d requests failed with an exception%n", failures.sum());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void fill(ExecutorService executor) throws Exception {
+        parallel(executor, intOption("users", 1000), this::createUser);
+        parallel(executor, intOption("forums", 20), this::createForum);
+        parallel(executor, intOption("threads", 2000), this::createThread);
+        int batch = intOption("batch", 100);
+        parallel(executor, (intOption("posts", 200000) + batch - 1) / batch,
+                i -> createPosts(i, batch));
+        parallel(executor, intOption("votes", 20000), this::vote);
+    }
+
+    private void parallel(ExecutorService executor, int tasks, IntConsumer task) throws Exception {
+        List<Future<?>> futures = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            final int index = i;
+            futures.add(executor.submit(() -> {
+                try {
+                    task.accept(index);
+                } catch (RuntimeException ex) {
+                    failures.increment();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private Random random(long index) {
+        return new Random(seed * 1_000_003L + index);
+    }
+
+    private static <T> T pick(Random random, List<T> list) {
+        return list.get(random.nextInt(list.size()));
+    }
+
+    private void createUser(int i) {
+        String nickname = "user" + i;
+        User user = new User();
+        user.setFullname("User " + i);
+        user.setEmail(nickname + "@load.local");
+        user.setAbout("Generated by the load harness");
+        if (client.post("POST /api/user/{nickname}/create",
+                "/api/user/" + nickname + "/create", user).status == 201) {
+            users.add(nickname);
+        }
+    }
+
+    private void createForum(int i) {
+        Forum forum = new Forum();
+        forum.setSlug("forum" + i);
+        forum.setTitle("Forum " + i);
+        forum.setUser(pick(random(i), users));
+        if (client.post("POST /api/forum/create", "/api/forum/create", forum).status == 201) {
+            forums.add(forum.getSlug());
+        }
+    }
+
+    private void createThread(int i) {
+        Random random = random(i);
+        Thread thread = new Thread();
+        thread.setSlug("thread" + i);
+        thread.setTitle("Thread " + i);
+        thread.setMessage("Thread message " + i);
+        thread.setAuthor(pick(random, users));
+        String forum = pick(random, forums);
+        ApiClient.Response response = client.post("POST /api/forum/{slug}/create",
+                "/api/forum/" + forum + "/create", thread);
+        if (response.status == 201) {
+            int id = response.body.get("id").asInt();
+            threadPosts.put(id, Collections.synchronizedList(new ArrayList<>()));
+            threads.add(id);
+        }
+    }
+
+    private void createPosts(int i, int batch) {
+        Random random = random(i);
+        int thread = pick(random, threads);
+        List<Long> existing = threadPosts.get(thread);
+        double roots = Double.parseDouble(option("roots", "0.2"));
+
+        List<Post> body = new ArrayList<>(batch);
+        for (int p = 0; p < batch; p++) {
+            Post post = new Post();
+            post.setAuthor(pick(random, users));
+            post.setMessage("Post message " + random.nextInt());
+            synchronized (existing) {
+                if (!existing.isEmpty() && random.nextDouble() >= roots) {
+                    post.setParent(pick(random, existing));
+                }
+            }
+            body.add(post);
+        }
+        ApiClient.Response response = client.post("POST /api/thread/{slug_or_id}/create",
+                "/api/thread/" + thread + "/create", body);
+        if (response.status == 201) {
+            for (JsonNode post : response.body) {
+                existing.add(post.get("id").asLong());
+                posts.add(post.get("id").asLong());
+            }
+        }
+    }
+
+    private void vote(int i) {
+        Random random = random(i);
+        Vote vote = new Vote();
+        vote.setNickname(pick(random, users));
+        vote.setVoice(random.nextBoolean() ? 1 : -1);
+        client.post("POST /api/thread/{slug_or_id}/vote",
+                "/api/thread/" + pick(random, threads) + "/vote", vote);
+    }
+
+    private void read(ExecutorService executor, long durationNanos) throws Exception {
+        long deadline = System.nanoTime() + durationNanos;
+        int limit = intOption("limit", 100);
+        List<Future<?>> workers = new ArrayList<>(concurrency);
+        for (int w = 0; w < concurrency; w++) {
+            final Random random = random(-1 - w);
+            workers.add(executor.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    try {
+                        readOnce(random, limit);
+                    } catch (RuntimeException ex) {
+                        failures.increment();
+                    }
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+    }
+
+    private void readOnce(Random random, int limit) {
+        int op = random.nextInt(100);
+        boolean desc = random.nextBoolean();
+        if (op < 40) {
+            String sort = SORTS[random.nextInt(SORTS.length)];
+            int pageLimit = sort.equals("parent_tree") ? Math.max(1, limit / 10) : limit;
+            client.get("GET /api/thread/{slug_or_id}/posts?sort=" + sort,
+                    "/api/thread/" + pick(random, threads) + "/posts?sort=" + sort +
+                            "&limit=" + pageLimit + "&desc=" + desc);
+        } else if (op < 55) {
+            client.get("GET /api/post/{id}/details?related=user,forum,thread",
+                    "/api/post/" + pick(random, posts) + "/details?related=user,forum,thread");
+        } else if (op < 65) {
+            client.get("GET /api/thread/{slug_or_id}/details",
+                    "/api/thread/" + pick(random, threads) + "/details");
+        } else if (op < 75) {
+            client.get("GET /api/forum/{slug}/threads", "/api/forum/" + pick(random, forums) +
+                    "/threads?limit=" + limit + "&desc=" + desc);
+        } else if (op < 83) {
+            client.get("GET /api/forum/{slug}/users", "/api/forum/" + pick(random, forums) +
+                    "/users?limit=" + limit + "&desc=" + desc);
+        } else if (op < 90) {
+            client.get("GET /api/forum/{slug}/details",
+                    "/api/forum/" + pick(random, forums) + "/details");
+        } else if (op < 99) {
+            client.get("GET /api/user/{nickname}/profile",
+                    "/api/user/" + pick(random, users) + "/profile");
+        } else {
+            client.get("GET /api/service/status", "/api/service/status");
+        }
+    }
+}
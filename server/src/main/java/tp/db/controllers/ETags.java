@@ -0,0 +1,45 @@
+package tp.db.controllers;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Enumeration;
+
+final class ETags {
+    private ETags() {}
+
+    /**
+     * Whether the request's If-None-Match already names this tag. A null tag, which the
+     * versions hand out when the read could come from a replica, never matches.
+     */
+    static boolean notModified(HttpServletRequest request, String etag) {
+        if (etag == null) {
+            return false;
+        }
+        Enumeration<String> headers = request.getHeaders(HttpHeaders.IF_NONE_MATCH);
+        while (headers.hasMoreElements()) {
+            for (String tag : StringUtils.commaDelimitedListToStringArray(headers.nextElement())) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals(etag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static ResponseEntity<?> notModifiedResponse(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    static ResponseEntity.BodyBuilder ok(String etag) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        return etag == null ? builder : builder.eTag(etag);
+    }
+}
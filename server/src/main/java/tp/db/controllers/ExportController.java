@@ -0,0 +1,180 @@
+package tp.db.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tp.db.dao.ExportDAO;
+import tp.db.dao.ForumDAO;
+import tp.db.dao.ThreadDAO;
+import tp.db.models.Error;
+import tp.db.models.Forum;
+import tp.db.models.Thread;
+import tp.db.pool.ReadRouting;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Dumps of a forum's threads, posts and votes or a thread's posts and votes for analytics
+ * and backups, in the format the import takes: CSV with a header line when the client
+ * accepts text/csv, one JSON object per line otherwise, gzip-encoded when it accepts gzip.
+ * The rows go from the database to the client as they are read; when the export pool and its
+ * queue are full, the request is answered with 503.
+ */
+@RestController
+@RequestMapping("/api/service/export")
+public class ExportController {
+    private static final MediaType CSV = MediaType.parseMediaType("text/csv;charset=UTF-8");
+    private static final MediaType NDJSON =
+            MediaType.parseMediaType("application/x-ndjson;charset=UTF-8");
+
+    private final ExportDAO dao;
+    private final ForumDAO forumDAO;
+    private final ThreadDAO threadDAO;
+    private final ReadRouting routing;
+    private final ObjectMapper mapper;
+
+    public ExportController(ExportDAO dao, ForumDAO forumDAO, ThreadDAO threadDAO,
+                            ReadRouting routing, ObjectMapper mapper) {
+        this.dao = dao;
+        this.forumDAO = forumDAO;
+        this.threadDAO = threadDAO;
+        this.routing = routing;
+        this.mapper = mapper;
+    }
+
+    @GetMapping("/forum/{slug}/threads")
+    public ResponseEntity<StreamingResponseBody> forumThreads(
+            @PathVariable(name = "slug") String slug, HttpServletRequest request) {
+        String forum = forumSlug(slug);
+        return stream(request, (csv, out) -> dao.exportForumThreads(forum, csv, out));
+    }
+
+    @GetMapping("/forum/{slug}/posts")
+    public ResponseEntity<StreamingResponseBody> forumPosts(
+            @PathVariable(name = "slug") String slug, HttpServletRequest request) {
+        String forum = forumSlug(slug);
+        return stream(request, (csv, out) -> dao.exportForumPosts(forum, csv, out));
+    }
+
+    @GetMapping("/forum/{slug}/votes")
+    public ResponseEntity<StreamingResponseBody> forumVotes(
+            @PathVariable(name = "slug") String slug, HttpServletRequest request) {
+        String forum = forumSlug(slug);
+        return stream(request, (csv, out) -> dao.exportForumVotes(forum, csv, out));
+    }
+
+    @GetMapping("/thread/{slug_or_id}/posts")
+    public ResponseEntity<StreamingResponseBody> threadPosts(
+            @PathVariable(name = "slug_or_id") String slugOrId, HttpServletRequest request) {
+        int thread = threadId(slugOrId);
+        return stream(request, (csv, out) -> dao.exportThreadPosts(thread, csv, out));
+    }
+
+    @GetMapping("/thread/{slug_or_id}/votes")
+    public ResponseEntity<StreamingResponseBody> threadVotes(
+            @PathVariable(name = "slug_or_id") String slugOrId, HttpServletRequest request) {
+        int thread = threadId(slugOrId);
+        return stream(request, (csv, out) -> dao.exportThreadVotes(thread, csv, out));
+    }
+
+    @ExceptionHandler({ForumDAO.NoSuchForumException.class,
+            ThreadDAO.NoSuchThreadException.class})
+    public void notFound(RuntimeException ex, HttpServletResponse response) throws IOException {
+        // Written by hand: a client that asked for CSV would otherwise get a bare 406.
+        response.setStatus(HttpStatus.NOT_FOUND.value());
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        mapper.writeValue(response.getOutputStream(), new Error(ex.getMessage()));
+    }
+
+    @ExceptionHandler(TaskRejectedException.class)
+    public void busy(TaskRejectedException ex, HttpServletResponse response) throws IOException {
+        // The export's own headers, gzip encoding included, are already on the response.
+        response.reset();
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        mapper.writeValue(response.getOutputStream(),
+                new Error("Too many exports are running or waiting, try again later"));
+    }
+
+    private String forumSlug(String slug) {
+        Forum forum = forumDAO.getForumBySlug(slug);
+        if(forum == null) {
+            throw new ForumDAO.NoSuchForumException(slug);
+        }
+        return forum.getSlug();
+    }
+
+    private int threadId(String slugOrId) {
+        Thread thread = threadDAO.getThreadIdentity(slugOrId);
+        if(thread == null) {
+            throw new ThreadDAO.NoSuchThreadException(slugOrId);
+        }
+        return thread.getId();
+    }
+
+    /**
+     * The body is written on an export thread after this returns, so it takes over the
+     * request's choice between replica and primary explicitly.
+     */
+    private ResponseEntity<StreamingResponseBody> stream(
+            HttpServletRequest request, BiConsumer<Boolean, OutputStream> export) {
+        boolean csv = acceptsCsv(request.getHeader(HttpHeaders.ACCEPT));
+        String encoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = encoding != null && encoding.toLowerCase().contains("gzip");
+        boolean replica = routing.mayReadReplica();
+
+        StreamingResponseBody body = out -> {
+            routing.reset();
+            if(!replica) {
+                routing.pinPrimary();
+            }
+            try {
+                if(gzip) {
+                    GZIPOutputStream zip = new GZIPOutputStream(out, 1 << 16);
+                    export.accept(csv, zip);
+                    zip.finish();
+                } else {
+                    export.accept(csv, out);
+                }
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            } finally {
+                routing.reset();
+            }
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(csv ? CSV : NDJSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+        if(gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    private static boolean acceptsCsv(String accept) {
+        if(accept == null) {
+            return false;
+        }
+        for (MediaType type : MediaType.parseMediaTypes(accept)) {
+            if(!type.isWildcardSubtype() && CSV.isCompatibleWith(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
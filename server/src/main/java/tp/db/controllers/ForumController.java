@@ -0,0 +1,195 @@
+package tp.db.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import tp.db.dao.EntityVersions;
+import tp.db.dao.ForumDAO;
+import tp.db.dao.PageCursors;
+import tp.db.dao.SearchDAO;
+import tp.db.dao.ThreadDAO;
+import tp.db.dao.UserDAO;
+import tp.db.models.Error;
+import tp.db.models.Forum;
+import tp.db.models.Page;
+import tp.db.models.Thread;
+import tp.db.models.User;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/forum")
+public class ForumController {
+    private final ForumDAO dao;
+    private final ThreadDAO threadDAO;
+    private final UserDAO userDAO;
+    private final SearchDAO searchDAO;
+    private final ObjectMapper mapper;
+    private final EntityVersions versions;
+    private final int streamThreshold;
+    private final int pageSize;
+
+    public ForumController(ForumDAO dao, ThreadDAO threadDAO, UserDAO userDAO,
+                           SearchDAO searchDAO, ObjectMapper mapper, EntityVersions versions,
+                           @Value("${db.stream.threshold:1000}") int streamThreshold,
+                           @Value("${db.stream.page-size:500}") int pageSize) {
+        this.dao = dao;
+        this.threadDAO = threadDAO;
+        this.userDAO = userDAO;
+        this.searchDAO = searchDAO;
+        this.mapper = mapper;
+        this.versions = versions;
+        this.streamThreshold = streamThreshold;
+        this.pageSize = pageSize;
+    }
+
+    @PostMapping("/create")
+    public ResponseEntity<?> createForum(@RequestBody Forum body) {
+        Forum forum = dao.getForumBySlug(body.getSlug());
+        if(forum != null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(forum);
+        }
+        try {
+            forum = dao.createForum(body);
+            return ResponseEntity.status(HttpStatus.CREATED).body(forum);
+        } catch (UserDAO.NoSuchUserException ex) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new Error(ex.getMessage()));
+        }
+    }
+
+    @PostMapping("/{slug}/create")
+    public ResponseEntity<?> createThread(@PathVariable(name = "slug") String slug,
+                                          @RequestBody Thread body) {
+        try {
+            Thread thread = threadDAO.createThread(slug, body);
+            return ResponseEntity.status(HttpStatus.CREATED).body(thread);
+        } catch (UserDAO.NoSuchUserException | ForumDAO.NoSuchForumException ex) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new Error(ex.getMessage()));
+        } catch (DuplicateKeyException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(threadDAO.getThreadBySlugOrId(body.getSlug()));
+        }
+    }
+
+    @GetMapping("/{slug}/details")
+    public ResponseEntity<?> getForum(@PathVariable(name = "slug") String slug,
+                                      HttpServletRequest request) {
+        String etag = versions.forum(slug);
+        if (ETags.notModified(request, etag)) {
+            return ETags.notModifiedResponse(etag);
+        }
+        Forum forum = dao.getForumBySlug(slug);
+        if(forum != null) {
+            return ETags.ok(etag).body(forum);
+        } else {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new Error(String.format("Can't find forum with slug %s", slug)));
+        }
+    }
+
+    @GetMapping("/{slug}/threads")
+    public ResponseEntity<?> getThreads(@PathVariable(name = "slug") String slug,
+                                        @RequestParam(name = "limit", required = false) Integer limit,
+                                        @RequestParam(name = "since", required = false) String since,
+                                        @RequestParam(name = "cursor", required = false) String cursor,
+                                        @RequestParam(name = "desc", required = false,
+                                                defaultValue = "false") Boolean desc,
+                                        HttpServletResponse response) throws IOException {
+        if(Pages.cursorLimitExceeded(cursor, limit, streamThreshold)) {
+            return Pages.cursorLimitResponse(streamThreshold);
+        }
+        try {
+            if(limit == null || limit > streamThreshold) {
+                if(dao.getForumBySlug(slug) == null) {
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+                            new Error(String.format("Can't find forum with slug %s", slug)));
+                }
+                JsonStreams.writePages(mapper, response, limit, pageSize, cursor,
+                        (size, next) -> threadDAO.getThreadsByForumSlug(slug, size, since, next,
+                                desc));
+                return null;
+            }
+            Page<Thread> threads = threadDAO.getThreadsByForumSlug(slug, limit, since, cursor,
+                    desc);
+            if(threads != null) {
+                return Pages.next(ResponseEntity.ok(), threads).body(threads.getItems());
+            } else {
+                if(dao.getForumBySlug(slug) != null) {
+                    return ResponseEntity.ok(new ArrayList<>());
+                }
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new Error(String.format("Can't find forum with slug %s", slug)));
+            }
+        } catch (PageCursors.BadCursorException ex) {
+            return ResponseEntity.badRequest().body(new Error(ex.getMessage()));
+        }
+    }
+
+    @GetMapping("/{slug}/users")
+    public ResponseEntity<?> getUsers(@PathVariable(name = "slug") String slug,
+                                      @RequestParam(name = "limit", required = false) Integer limit,
+                                      @RequestParam(name = "since", required = false) String since,
+                                      @RequestParam(name = "cursor", required = false) String cursor,
+                                      @RequestParam(name = "desc", required = false,
+                                              defaultValue = "false") Boolean desc,
+                                      HttpServletResponse response) throws IOException {
+        if(Pages.cursorLimitExceeded(cursor, limit, streamThreshold)) {
+            return Pages.cursorLimitResponse(streamThreshold);
+        }
+        try {
+            if(limit == null || limit > streamThreshold) {
+                if(dao.getForumBySlug(slug) == null) {
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+                            new Error(String.format("Can't find forum with slug %s", slug)));
+                }
+                JsonStreams.writePages(mapper, response, limit, pageSize, cursor,
+                        (size, next) -> userDAO.getUsersByForumSlug(slug, size, since, next,
+                                desc));
+                return null;
+            }
+            Page<User> users = userDAO.getUsersByForumSlug(slug, limit, since, cursor, desc);
+            if(users != null) {
+                return Pages.next(ResponseEntity.ok(), users).body(users.getItems());
+            } else {
+                if(dao.getForumBySlug(slug) != null) {
+                    return ResponseEntity.ok(Collections.EMPTY_LIST);
+                }
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new Error(String.format("Can't find forum with slug %s", slug)));
+            }
+        } catch (PageCursors.BadCursorException ex) {
+            return ResponseEntity.badRequest().body(new Error(ex.getMessage()));
+        }
+    }
+
+    @GetMapping("/{slug}/search")
+    public ResponseEntity<?> search(@PathVariable(name = "slug") String slug,
+                                    @RequestParam(name = "q", required = false) String q,
+                                    @RequestParam(name = "limit", required = false,
+                                            defaultValue = "100") Integer limit,
+                                    @RequestParam(name = "since", required = false) String since) {
+        if(q == null || q.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(new Error("Search query q is empty"));
+        }
+        Forum forum = dao.getForumBySlug(slug);
+        if(forum == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new Error(String.format("Can't find forum with slug %s", slug)));
+        }
+        try {
+            return ResponseEntity.ok(searchDAO.searchForum(forum.getSlug(), q, limit, since));
+        } catch (PageCursors.BadCursorException | SearchDAO.BadLimitException ex) {
+            return ResponseEntity.badRequest().body(new Error(ex.getMessage()));
+        }
+    }
+}
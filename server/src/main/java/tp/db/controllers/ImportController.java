@@ -0,0 +1,96 @@
+package tp.db.controllers;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import tp.db.dao.ForumDAO;
+import tp.db.dao.ImportDAO;
+import tp.db.dao.PostDAO;
+import tp.db.dao.ThreadDAO;
+import tp.db.dao.UserDAO;
+import tp.db.models.Error;
+import tp.db.models.ImportResult;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Bulk loads for seeding and migrations. The body is a CSV file with a header line naming
+ * the fields (text/csv) or one JSON object per line (application/x-ndjson), optionally
+ * gzip-encoded, and is streamed into the database as it arrives. Field names are those of
+ * the API's JSON; posts and votes name their thread by id.
+ */
+@RestController
+@RequestMapping("/api/service/import")
+public class ImportController {
+    private static final MediaType CSV = MediaType.parseMediaType("text/csv");
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final ImportDAO dao;
+
+    public ImportController(ImportDAO dao) {
+        this.dao = dao;
+    }
+
+    @PostMapping("/{entity}")
+    public ResponseEntity<?> load(@PathVariable(name = "entity") String entity,
+                                  HttpServletRequest request) throws IOException {
+        MediaType type = request.getContentType() == null ? null
+                : MediaType.parseMediaType(request.getContentType());
+        boolean csv;
+        if(type != null && CSV.includes(type)) {
+            csv = true;
+        } else if(type != null && (NDJSON.includes(type)
+                || MediaType.APPLICATION_JSON.includes(type))) {
+            csv = false;
+        } else {
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+                    .body(new Error("Send text/csv or application/x-ndjson"));
+        }
+
+        InputStream in = new BufferedInputStream(request.getInputStream(), 1 << 16);
+        if("gzip".equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING))) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        try {
+            long rows;
+            switch (entity) {
+                case "users": rows = dao.importUsers(in, csv); break;
+                case "forums": rows = dao.importForums(in, csv); break;
+                case "threads": rows = dao.importThreads(in, csv); break;
+                case "posts": rows = dao.importPosts(in, csv); break;
+                case "votes": rows = dao.importVotes(in, csv); break;
+                default:
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                            .body(new Error(String.format("Can't import %s", entity)));
+            }
+            return ResponseEntity.ok(new ImportResult(entity, rows));
+        } catch (UserDAO.NoSuchUserException | ForumDAO.NoSuchForumException |
+                ThreadDAO.NoSuchThreadException ex) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Error(ex.getMessage()));
+        } catch (PostDAO.NoSuchPostException | DuplicateKeyException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new Error(rootMessage(ex)));
+        } catch (ImportDAO.BadImportException | DataIntegrityViolationException ex) {
+            return ResponseEntity.badRequest().body(new Error(rootMessage(ex)));
+        }
+    }
+
+    private static String rootMessage(Exception ex) {
+        Throwable cause = ex;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage();
+    }
+}
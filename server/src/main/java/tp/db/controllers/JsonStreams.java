@@ -0,0 +1,80 @@
+package tp.db.controllers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import tp.db.models.Page;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+final class JsonStreams {
+    private JsonStreams() {}
+
+    /**
+     * Writes the items handed to the consumer as a JSON array straight to the response, one
+     * at a time. The status is committed with the first item, so callers have to resolve
+     * every error case beforehand; until then the producer may still fail and leave the
+     * response untouched for an error.
+     */
+    static <T> void writeArray(ObjectMapper mapper, HttpServletResponse response,
+                               Consumer<Consumer<T>> producer) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        JsonGenerator generator = mapper.getFactory().createGenerator(response.getOutputStream());
+        boolean[] started = {false};
+        try {
+            producer.accept(item -> {
+                try {
+                    if(!started[0]) {
+                        started[0] = true;
+                        generator.writeStartArray();
+                    }
+                    generator.writeObject(item);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            if(!started[0]) {
+                started[0] = true;
+                generator.writeStartArray();
+            }
+            generator.writeEndArray();
+        } finally {
+            if(started[0]) {
+                generator.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a listing as one array, read page by page through its cursors: pages hold at most
+     * pageSize rows and together at most limit, if any. Each page is read by a call of its
+     * own and written only once that call returned, so no connection is held while a slow
+     * client takes the rows.
+     */
+    static <T> void writePages(ObjectMapper mapper, HttpServletResponse response, Integer limit,
+                               int pageSize, String cursor,
+                               BiFunction<Integer, String, Page<T>> pages) throws IOException {
+        JsonStreams.<T>writeArray(mapper, response, items -> {
+            Integer left = limit;
+            String next = cursor;
+            do {
+                int size = left == null ? pageSize : Math.min(left, pageSize);
+                Page<T> page = pages.apply(size, next);
+                if(page == null) {
+                    return;
+                }
+                page.getItems().forEach(items);
+                next = page.getNext();
+                if(left != null) {
+                    left -= size;
+                }
+            } while (next != null && (left == null || left > 0));
+        });
+    }
+}
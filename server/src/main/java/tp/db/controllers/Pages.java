@@ -0,0 +1,35 @@
+package tp.db.controllers;
+
+import org.springframework.http.ResponseEntity;
+import tp.db.models.Error;
+import tp.db.models.Page;
+
+final class Pages {
+    static final String NEXT_CURSOR = "X-Next-Cursor";
+
+    private Pages() {}
+
+    /**
+     * Listings answer with a bare array, so the cursor for the next page travels in a header.
+     * Streamed listings, those without a limit or with one above db.stream.threshold, have
+     * committed their headers before the last row is known and never carry one, so a
+     * listing is walked by cursor with a limit of at most the threshold.
+     */
+    static ResponseEntity.BodyBuilder next(ResponseEntity.BodyBuilder builder, Page<?> page) {
+        return page.getNext() == null ? builder : builder.header(NEXT_CURSOR, page.getNext());
+    }
+
+    /**
+     * A listing without a limit runs to its end and needs no cursor, but a page larger than
+     * the threshold would be streamed and could not hand out the next one, so resuming from a
+     * cursor with such a limit is refused rather than silently ending the walk.
+     */
+    static boolean cursorLimitExceeded(String cursor, Integer limit, int threshold) {
+        return cursor != null && limit != null && limit > threshold;
+    }
+
+    static ResponseEntity<?> cursorLimitResponse(int threshold) {
+        return ResponseEntity.badRequest().body(new Error(String.format(
+                "Pages resumed from a cursor hold at most %d rows", threshold)));
+    }
+}
@@ -0,0 +1,63 @@
+package tp.db.controllers;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import tp.db.dao.ServiceDAO;
+import tp.db.metrics.Metrics;
+
+@RestController
+@RequestMapping("/api/service")
+public class ServiceController {
+    private static final MediaType PROMETHEUS = MediaType.parseMediaType(
+            "text/plain; version=0.0.4; charset=utf-8");
+
+    private ServiceDAO serviceDAO;
+    private Metrics metrics;
+
+    public ServiceController(ServiceDAO serviceDAO, Metrics metrics) {
+        this.serviceDAO = serviceDAO;
+        this.metrics = metrics;
+    }
+
+
+    @GetMapping("/status")
+    public ResponseEntity<?> getStatus() {
+        return ResponseEntity.ok(serviceDAO.getStatus());
+    }
+
+    @GetMapping("/pool")
+    public ResponseEntity<?> getPoolStatus() {
+        return ResponseEntity.ok(serviceDAO.getPoolStatus());
+    }
+
+    @GetMapping("/replicas")
+    public ResponseEntity<?> getReplicaStatus() {
+        return ResponseEntity.ok(serviceDAO.getReplicaStatus());
+    }
+
+    @GetMapping("/cache")
+    public ResponseEntity<?> getCacheStats() {
+        return ResponseEntity.ok(serviceDAO.getCacheStats());
+    }
+
+    @GetMapping("/metrics")
+    public ResponseEntity<?> getMetrics() {
+        return ResponseEntity.ok(metrics.snapshot());
+    }
+
+    @GetMapping("/metrics/prometheus")
+    public ResponseEntity<?> getPrometheusMetrics() {
+        return ResponseEntity.ok().contentType(PROMETHEUS).body(metrics.prometheus());
+    }
+
+    @PostMapping("/clear")
+    public ResponseEntity<?> clear() {
+        serviceDAO.clear();
+        return ResponseEntity.ok(null);
+    }
+
+}
@@ -0,0 +1,177 @@
+package tp.db.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import tp.db.dao.EntityVersions;
+import tp.db.dao.ForumDAO;
+import tp.db.dao.PageCursors;
+import tp.db.dao.PostDAO;
+import tp.db.dao.SearchDAO;
+import tp.db.dao.ThreadDAO;
+import tp.db.dao.UserDAO;
+import tp.db.models.*;
+import tp.db.models.Error;
+import tp.db.models.Thread;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/thread")
+public class ThreadController {
+    private final PostDAO dao;
+    private final ThreadDAO threadDAO;
+    private final SearchDAO searchDAO;
+    private final ObjectMapper mapper;
+    private final EntityVersions versions;
+    private final int streamThreshold;
+    private final int pageSize;
+
+    public ThreadController(PostDAO dao, ThreadDAO threadDAO, SearchDAO searchDAO,
+                            ObjectMapper mapper, EntityVersions versions,
+                            @Value("${db.stream.threshold:1000}") int streamThreshold,
+                            @Value("${db.stream.page-size:500}") int pageSize) {
+        this.dao = dao;
+        this.threadDAO = threadDAO;
+        this.searchDAO = searchDAO;
+        this.mapper = mapper;
+        this.versions = versions;
+        this.streamThreshold = streamThreshold;
+        this.pageSize = pageSize;
+    }
+
+    @PostMapping("/{slug_or_id}/create")
+    public ResponseEntity<?> createPosts(@PathVariable(name = "slug_or_id") String slug,
+                                         @RequestBody List<Post> body) {
+        try {
+                List<Post> posts = dao.createPost(slug, body);
+            return ResponseEntity.status(HttpStatus.CREATED).body(posts);
+        } catch (ForumDAO.NoSuchForumException | UserDAO.NoSuchUserException |
+                ThreadDAO.NoSuchThreadException ex) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new Error(ex.getMessage()));
+        } catch (DuplicateKeyException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new Error("This slug already in use"));
+        } catch (PostDAO.NoSuchPostException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new Error(ex.getMessage()
+                    + String.format("in thread %s", slug)));
+        }
+    }
+
+    @GetMapping("/{slug_or_id}/details")
+    public ResponseEntity<?> getThread(@PathVariable(name = "slug_or_id") String slugOrId,
+                                       HttpServletRequest request) {
+        String etag = versions.thread(slugOrId);
+        if (ETags.notModified(request, etag)) {
+            return ETags.notModifiedResponse(etag);
+        }
+        Thread thread = threadDAO.getThreadBySlugOrId(slugOrId);
+        if(thread != null) {
+            return ETags.ok(etag).body(thread);
+        }
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(new Error(String.format("Can't find thread with slug or id %s", slugOrId)));
+    }
+
+    @PostMapping("/{slug_or_id}/details")
+    public ResponseEntity<?> updateThread(@PathVariable(name = "slug_or_id") String slugOrID,
+                                          @RequestBody ThreadUpdate body) {
+        try {
+            Thread thread = threadDAO.updateThread(slugOrID, body);
+            return ResponseEntity.ok(thread);
+        } catch (ThreadDAO.NoSuchThreadException ex) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Error(ex.getMessage()));
+        }
+    }
+
+    @GetMapping("/{slug_or_id}/posts")
+    public ResponseEntity<?> getPosts(@PathVariable(name = "slug_or_id") String slugOrId,
+                                      @RequestParam(name = "limit", required = false) Integer limit,
+                                      @RequestParam(name = "since", required = false) Long since,
+                                      @RequestParam(name = "cursor", required = false) String cursor,
+                                      @RequestParam(name = "sort", required = false) String sort,
+                                      @RequestParam(name = "desc", required = false,
+                                              defaultValue = "false") Boolean desc,
+                                      HttpServletRequest request,
+                                      HttpServletResponse response) throws IOException {
+        if (Pages.cursorLimitExceeded(cursor, limit, streamThreshold)) {
+            return Pages.cursorLimitResponse(streamThreshold);
+        }
+        String etag = versions.posts(slugOrId);
+        if (ETags.notModified(request, etag)) {
+            return ETags.notModifiedResponse(etag);
+        }
+        try {
+            if (limit == null || limit > streamThreshold) {
+                Thread thread = threadDAO.getThreadIdentity(slugOrId);
+                if (thread == null) {
+                    throw new ThreadDAO.NoSuchThreadException(slugOrId);
+                }
+                if (etag != null) {
+                    response.setHeader(HttpHeaders.ETAG, etag);
+                }
+                JsonStreams.writePages(mapper, response, limit, pageSize, cursor,
+                        (size, next) -> dao.getPostsBySlugOrId(slugOrId, size, since, next, sort,
+                                desc));
+                return null;
+            }
+            Page<Post> posts = dao.getPostsBySlugOrId(slugOrId, limit, since, cursor, sort, desc);
+            if (posts != null) {
+                return Pages.next(ETags.ok(etag), posts).body(posts.getItems());
+            }
+            return ETags.ok(etag).body(Collections.EMPTY_LIST);
+        } catch (ThreadDAO.NoSuchThreadException ex) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Error(ex.getMessage()));
+        } catch (PageCursors.BadCursorException ex) {
+            return ResponseEntity.badRequest().body(new Error(ex.getMessage()));
+        }
+    }
+
+    @PostMapping("/{slug_or_id}/vote")
+    public ResponseEntity<?> vote(@PathVariable(name = "slug_or_id") String slugOrId,
+                                  @RequestBody Vote body) {
+        try {
+            Thread thread = threadDAO.voteThread(slugOrId, body);
+            if (thread == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new Error(String.format("Can't find thread with slug or id %s",
+                                slugOrId)));
+            }
+            return ResponseEntity.ok(thread);
+        } catch (UserDAO.NoSuchUserException ex) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new  Error(ex.getMessage()));
+        } catch (ThreadDAO.VoteConflictException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new Error(ex.getMessage()));
+        }
+    }
+
+    @GetMapping("/{slug_or_id}/search")
+    public ResponseEntity<?> search(@PathVariable(name = "slug_or_id") String slugOrId,
+                                    @RequestParam(name = "q", required = false) String q,
+                                    @RequestParam(name = "limit", required = false,
+                                            defaultValue = "100") Integer limit,
+                                    @RequestParam(name = "since", required = false) String since) {
+        if(q == null || q.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(new Error("Search query q is empty"));
+        }
+        Thread thread = threadDAO.getThreadIdentity(slugOrId);
+        if(thread == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new Error(
+                    String.format("Can't find thread with slug or id %s", slugOrId)));
+        }
+        try {
+            return ResponseEntity.ok(searchDAO.searchThread(thread.getId(), q, limit, since));
+        } catch (PageCursors.BadCursorException | SearchDAO.BadLimitException ex) {
+            return ResponseEntity.badRequest().body(new Error(ex.getMessage()));
+        }
+    }
+}
@@ -4,18 +4,23 @@ import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import tp.db.dao.EntityVersions;
 import tp.db.models.Error;
 import tp.db.dao.UserDAO;
 import tp.db.models.User;
 import tp.db.models.UserUpdate;
 
+import javax.servlet.http.HttpServletRequest;
+
 @RestController
 @RequestMapping("/api/user")
 public class UserController {
     private final UserDAO dao;
+    private final EntityVersions versions;
 
-    public UserController(UserDAO dao) {
+    public UserController(UserDAO dao, EntityVersions versions) {
         this.dao = dao;
+        this.versions = versions;
     }
 
     @PostMapping("/{nickname}/create")
@@ -31,10 +36,15 @@ public class UserController {
     }
 
     @GetMapping("/{nickname}/profile")
-    public ResponseEntity<?> getUser(@PathVariable(name = "nickname") String nickname) {
+    public ResponseEntity<?> getUser(@PathVariable(name = "nickname") String nickname,
+                                     HttpServletRequest request) {
+        String etag = versions.user(nickname);
+        if (ETags.notModified(request, etag)) {
+            return ETags.notModifiedResponse(etag);
+        }
         User user = dao.getUserByNickname(nickname);
         if(user != null)
-            return ResponseEntity.status(HttpStatus.OK).body(user);
+            return ETags.ok(etag).body(user);
         else
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(new Error(String.format("Can't find user with nickname %s", nickname)));
@@ -0,0 +1,163 @@
+package tp.db.dao;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tp.db.pool.ReadRouting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Merges key lookups from concurrent read-only transactions. The first lookup opens a batch
+ * and, if another lookup of this kind is already running, waits up to the window for others
+ * to join; it then runs one query for every key in the batch and hands each caller its row.
+ * Callers asking for the same key share one result.
+ *
+ * The query runs in the leading caller's transaction, on the connection that transaction
+ * holds. The others only take its rows, not its fate: a batch that fails may have failed for
+ * reasons of the leader's transaction alone, such as an earlier error that aborted it, so
+ * they look their keys up again in their own transactions.
+ *
+ * A lookup only joins a batch that has not been sent yet, so its query always starts after
+ * the lookup did and sees every write committed before it. Lookups in read-write
+ * transactions, which must see their own writes, and lookups that may go to a replica
+ * versus ones that must not, are never mixed.
+ */
+public class Coalescer<K, V> {
+    private final ReadRouting routing;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final Function<K, V> single;
+    private final Function<List<K>, Map<K, V>> batch;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Batch[] open = new Coalescer.Batch[2];
+    private int running;
+
+    private class Batch {
+        private final Map<K, CompletableFuture<V>> keys = new LinkedHashMap<>();
+        private final Thread leader = Thread.currentThread();
+        private volatile boolean sent;
+    }
+
+    Coalescer(ReadRouting routing, long windowNanos, int maxBatch, Function<K, V> single,
+              Function<List<K>, Map<K, V>> batch) {
+        this.routing = routing;
+        this.windowNanos = windowNanos;
+        this.maxBatch = maxBatch;
+        this.single = single;
+        this.batch = batch;
+    }
+
+    public V get(K key) {
+        if (windowNanos <= 0
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return single.apply(key);
+        }
+        int lane = routing.readsReplica() ? 1 : 0;
+        Batch current;
+        CompletableFuture<V> result;
+        boolean leading = false;
+        boolean wait = false;
+        lock.lock();
+        try {
+            current = open[lane];
+            if (current != null) {
+                result = join(current, key);
+                if (current.keys.size() >= maxBatch) {
+                    open[lane] = null;
+                    current.sent = true;
+                    LockSupport.unpark(current.leader);
+                }
+            } else {
+                leading = true;
+                current = new Batch();
+                result = join(current, key);
+                wait = running > 0 && maxBatch > 1;
+                if (wait) {
+                    open[lane] = current;
+                }
+                running++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!leading) {
+            try {
+                return await(result);
+            } catch (RuntimeException ex) {
+                return single.apply(key);
+            }
+        }
+
+        try {
+            if (wait) {
+                long deadline = System.nanoTime() + windowNanos;
+                long left = windowNanos;
+                while (!current.sent && left > 0) {
+                    LockSupport.parkNanos(this, left);
+                    left = deadline - System.nanoTime();
+                }
+                lock.lock();
+                try {
+                    if (open[lane] == current) {
+                        open[lane] = null;
+                    }
+                    current.sent = true;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            load(current);
+        } finally {
+            lock.lock();
+            try {
+                running--;
+            } finally {
+                lock.unlock();
+            }
+        }
+        return await(result);
+    }
+
+    private CompletableFuture<V> join(Batch current, K key) {
+        return current.keys.computeIfAbsent(key, k -> new CompletableFuture<>());
+    }
+
+    private void load(Batch current) {
+        try {
+            Map<K, V> rows;
+            if (current.keys.size() == 1) {
+                K key = current.keys.keySet().iterator().next();
+                rows = Collections.singletonMap(key, single.apply(key));
+            } else {
+                rows = batch.apply(new ArrayList<>(current.keys.keySet()));
+            }
+            current.keys.forEach((key, future) -> future.complete(rows.get(key)));
+        } catch (Throwable ex) {
+            current.keys.values().forEach(future -> future.completeExceptionally(ex));
+        }
+    }
+
+    private V await(CompletableFuture<V> result) {
+        try {
+            return result.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+}
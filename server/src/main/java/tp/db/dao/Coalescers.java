@@ -0,0 +1,35 @@
+package tp.db.dao;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tp.db.pool.ReadRouting;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Settings shared by the lookup coalescers: how long a batch stays open for more keys
+ * (db.coalesce.window-micros, 0 turns coalescing off) and how many keys it takes at most
+ * (db.coalesce.max-batch).
+ */
+@Component
+public class Coalescers {
+    private final ReadRouting routing;
+    private final long windowNanos;
+    private final int maxBatch;
+
+    public Coalescers(ReadRouting routing,
+                      @Value("${db.coalesce.window-micros:100}") long windowMicros,
+                      @Value("${db.coalesce.max-batch:64}") int maxBatch) {
+        this.routing = routing;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatch = maxBatch;
+    }
+
+    public <K, V> Coalescer<K, V> create(Function<K, V> single,
+                                         Function<List<K>, Map<K, V>> batch) {
+        return new Coalescer<>(routing, windowNanos, maxBatch, single, batch);
+    }
+}
@@ -0,0 +1,160 @@
+package tp.db.dao;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.postgresql.PGConnection;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.copy.CopyOut;
+import org.postgresql.copy.PGCopyOutputStream;
+import tp.db.dao.ImportDAO.BadImportException;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+final class CopyStreams {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private CopyStreams() {}
+
+    /**
+     * Copies a CSV stream whose first line names its fields. The header is mapped to table
+     * columns through the given field names; the rest of the stream goes to the server as is.
+     */
+    static long copyCsv(Connection con, String table, Map<String, String> columns,
+                        InputStream in) throws SQLException, IOException {
+        List<String> targets = new ArrayList<>();
+        for (String field : readLine(in).split(",", -1)) {
+            field = field.trim();
+            if(field.length() > 1 && field.startsWith("\"") && field.endsWith("\"")) {
+                field = field.substring(1, field.length() - 1);
+            }
+            String column = columns.get(field);
+            if(column == null) {
+                throw new BadImportException(String.format("Unknown field %s", field));
+            }
+            targets.add(column);
+        }
+        return con.unwrap(PGConnection.class).getCopyAPI().copyIn(String.format(
+                "COPY %s (%s) FROM STDIN WITH (FORMAT csv)", table, String.join(", ", targets)),
+                in, BUFFER_SIZE);
+    }
+
+    /**
+     * Copies a stream of JSON objects, one document after another, rewriting each as a CSV
+     * row. Missing and null fields become NULL; nested values are rejected.
+     */
+    static long copyJson(Connection con, String table, Map<String, String> columns,
+                         ObjectReader reader, InputStream in) throws SQLException, IOException {
+        PGCopyOutputStream copy = new PGCopyOutputStream(con.unwrap(PGConnection.class),
+                String.format("COPY %s (%s) FROM STDIN WITH (FORMAT csv)", table,
+                        String.join(", ", columns.values())), BUFFER_SIZE);
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(copy, StandardCharsets.UTF_8),
+                    BUFFER_SIZE);
+            MappingIterator<JsonNode> rows = reader.forType(JsonNode.class).readValues(in);
+            while (rows.hasNextValue()) {
+                JsonNode row = rows.nextValue();
+                if(!row.isObject()) {
+                    throw new BadImportException("Every row must be a JSON object");
+                }
+                boolean first = true;
+                for (String field : columns.keySet()) {
+                    if(!first) {
+                        out.write(',');
+                    }
+                    first = false;
+                    writeValue(out, field, row.get(field));
+                }
+                out.write('\n');
+            }
+            out.flush();
+            copy.endCopy();
+            return copy.getHandledRowCount();
+        } finally {
+            if(copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * Streams the rows of a query to the given stream as they arrive, either as CSV with a
+     * header line or as one JSON object per line, and returns how many were written.
+     *
+     * When the stream fails, the client is gone and the rest of the copy is not read.
+     * CopyOut.cancelCopy would leave pgjdbc out of step with the server, so the server is
+     * asked to cancel the statement instead, and the copy is read up to the error it then
+     * ends with; the connection stays usable for the rollback and the pool.
+     */
+    static long copyOut(Connection con, String query, boolean csv,
+                        OutputStream out) throws SQLException, IOException {
+        String sql;
+        if(csv) {
+            sql = String.format("COPY (%s) TO STDOUT WITH (FORMAT csv, HEADER)", query);
+        } else {
+            // Text format would double every backslash in the JSON. CSV leaves it as is, since
+            // JSON escapes all control characters and so never holds the delimiter or quote.
+            sql = String.format("COPY (SELECT row_to_json(r) FROM (%s) r) TO STDOUT WITH " +
+                    "(FORMAT csv, DELIMITER E'\\x01', QUOTE E'\\x02')", query);
+        }
+        CopyOut copy = con.unwrap(PGConnection.class).getCopyAPI().copyOut(sql);
+        byte[] row;
+        try {
+            while ((row = copy.readFromCopy()) != null) {
+                out.write(row);
+            }
+        } catch (IOException ex) {
+            con.unwrap(BaseConnection.class).cancelQuery();
+            try {
+                while (copy.readFromCopy() != null) {
+                    // Only what was already on its way before the cancel.
+                }
+            } catch (SQLException cancelled) {
+                // The copy ends with the cancellation error.
+            }
+            throw ex;
+        }
+        return copy.getHandledRowCount();
+    }
+
+    private static void writeValue(Writer out, String field, JsonNode value) throws IOException {
+        if(value == null || value.isNull()) {
+            return;
+        }
+        if(value.isContainerNode()) {
+            throw new BadImportException(String.format("Field %s must not be nested", field));
+        }
+        String text = value.asText();
+        out.write('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        String result = new String(line.toByteArray(), StandardCharsets.UTF_8);
+        return result.endsWith("\r") ? result.substring(0, result.length() - 1) : result;
+    }
+}
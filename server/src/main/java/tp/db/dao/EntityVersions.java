@@ -0,0 +1,164 @@
+package tp.db.dao;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import tp.db.models.Thread;
+import tp.db.pool.ReadRouting;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Version stamps of users, forums, threads and the posts of each thread, used as ETags.
+ *
+ * Keys hash into a fixed set of counters, so two entities may share one and a change to
+ * either makes both look changed, but a stamp is never reused for different content. Changes
+ * bump the counter once their transaction commits; a reader takes the stamp before it
+ * queries, so it can at worst pair newer content with an older stamp. The epoch changes on
+ * every start and every clear, which invalidates all stamps handed out before.
+ *
+ * Reads that may be served by a lagging replica get no stamp: their content could be older
+ * than the stamp they would be paired with. With replicas configured only requests pinned to
+ * the primary get one (see ReadRoutingFilter).
+ */
+@Component
+public class EntityVersions {
+    private static final int STRIPES = 1 << 16;
+
+    private static final char USER = 'u';
+    private static final char FORUM = 'f';
+    private static final char THREAD = 't';
+    private static final char POSTS = 'p';
+
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    private final ReadRouting routing;
+    private volatile long epoch = ThreadLocalRandom.current().nextLong();
+
+    public EntityVersions(ReadRouting routing) {
+        this.routing = routing;
+    }
+
+    public String user(String nickname) {
+        return tag(USER, nickname);
+    }
+
+    public String forum(String slug) {
+        return tag(FORUM, slug);
+    }
+
+    public String thread(String slugOrId) {
+        return tag(THREAD, threadKey(slugOrId));
+    }
+
+    public String posts(String slugOrId) {
+        return tag(POSTS, threadKey(slugOrId));
+    }
+
+    public void userChanged(String nickname) {
+        usersChanged(Collections.singletonList(nickname));
+    }
+
+    public void forumChanged(String slug) {
+        forumsChanged(Collections.singletonList(slug));
+    }
+
+    public void threadChanged(Thread thread) {
+        threadsChanged(Collections.singletonList(thread));
+    }
+
+    public void postsChanged(Thread thread) {
+        postsChanged(Collections.singletonList(thread));
+    }
+
+    public void usersChanged(Collection<String> nicknames) {
+        bump(keys(USER, nicknames));
+    }
+
+    public void forumsChanged(Collection<String> slugs) {
+        bump(keys(FORUM, slugs));
+    }
+
+    public void threadsChanged(Collection<Thread> threads) {
+        bump(keys(THREAD, threadKeys(threads)));
+    }
+
+    public void postsChanged(Collection<Thread> threads) {
+        bump(keys(POSTS, threadKeys(threads)));
+    }
+
+    public void clear() {
+        Assert.state(TransactionSynchronizationManager.isSynchronizationActive(),
+                "Versions can only change inside a transaction");
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        epoch = ThreadLocalRandom.current().nextLong();
+                    }
+                });
+    }
+
+    private String tag(char kind, String key) {
+        if (routing.mayReadReplica()) {
+            return null;
+        }
+        return "\"" + Long.toHexString(epoch) + '-' +
+                Long.toHexString(versions.get(index(kind, key))) + "\"";
+    }
+
+    private void bump(final int[] indexes) {
+        Assert.state(TransactionSynchronizationManager.isSynchronizationActive(),
+                "Versions can only change inside a transaction");
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        for (int index : indexes) {
+                            versions.incrementAndGet(index);
+                        }
+                    }
+                });
+    }
+
+    private static int[] keys(char kind, Collection<String> keys) {
+        return keys.stream().mapToInt(key -> index(kind, key)).distinct().toArray();
+    }
+
+    private static List<String> threadKeys(Collection<Thread> threads) {
+        List<String> result = new ArrayList<>(threads.size() * 2);
+        for (Thread thread : threads) {
+            result.add(Integer.toString(thread.getId()));
+            if (thread.getSlug() != null) {
+                result.add(thread.getSlug());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Threads are looked up by id when the path parses as one, so "042" and "42" name the
+     * same thread.
+     */
+    private static String threadKey(String slugOrId) {
+        try {
+            return Integer.toString(Integer.parseInt(slugOrId));
+        } catch (NumberFormatException ex) {
+            return slugOrId;
+        }
+    }
+
+    private static int index(char kind, String key) {
+        int h = kind;
+        for (int i = 0; i < key.length(); i++) {
+            h = 31 * h + Character.toLowerCase(key.charAt(i));
+        }
+        h ^= h >>> 16;
+        return h & (STRIPES - 1);
+    }
+}
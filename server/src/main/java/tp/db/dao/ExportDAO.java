@@ -0,0 +1,91 @@
+package tp.db.dao;
+
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tp.db.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Dumps of a forum's or a thread's threads, posts and votes. Each dump is a single COPY out
+ * of one read-only transaction, so it is consistent and goes to the output stream row by
+ * row. Rows carry the fields the import takes, so a dump loads back as it is; posts come
+ * thread by thread in tree order.
+ */
+@Service
+@Transactional(readOnly = true)
+public class ExportDAO {
+    private static final String CREATED = "to_char(created AT TIME ZONE 'UTC', " +
+            "'YYYY-MM-DD\"T\"HH24:MI:SS.MS\"Z\"') AS created";
+    private static final String THREADS = "SELECT id, slug, title, author, forum, message, " +
+            CREATED + " FROM thread";
+    private static final String POSTS = "SELECT id, parent, author, message, " +
+            "is_edited AS \"isEdited\", thread, " + CREATED + " FROM post";
+    private static final String VOTES = "SELECT nickname, voice, thread FROM vote";
+
+    private final JdbcTemplate template;
+    private final Metrics metrics;
+
+    public ExportDAO(JdbcTemplate template, Metrics metrics) {
+        this.template = template;
+        this.metrics = metrics;
+    }
+
+    public long exportForumThreads(String forum, boolean csv, OutputStream out) {
+        return copy("ExportDAO.exportForumThreads.copy", con -> String.format(
+                "%s WHERE forum = %s ORDER BY id", THREADS, literal(con, forum)), csv, out);
+    }
+
+    public long exportForumPosts(String forum, boolean csv, OutputStream out) {
+        return copy("ExportDAO.exportForumPosts.copy", con -> String.format(
+                "SELECT p.* FROM (SELECT id FROM thread WHERE forum = %s ORDER BY id) t " +
+                "CROSS JOIN LATERAL (%s WHERE thread = t.id ORDER BY path) p",
+                literal(con, forum), POSTS), csv, out);
+    }
+
+    public long exportForumVotes(String forum, boolean csv, OutputStream out) {
+        return copy("ExportDAO.exportForumVotes.copy", con -> String.format(
+                "SELECT v.* FROM (SELECT id FROM thread WHERE forum = %s ORDER BY id) t " +
+                "CROSS JOIN LATERAL (%s WHERE thread = t.id ORDER BY nickname) v",
+                literal(con, forum), VOTES), csv, out);
+    }
+
+    public long exportThreadPosts(int thread, boolean csv, OutputStream out) {
+        return copy("ExportDAO.exportThreadPosts.copy", con -> String.format(
+                "%s WHERE thread = %d ORDER BY path", POSTS, thread), csv, out);
+    }
+
+    public long exportThreadVotes(int thread, boolean csv, OutputStream out) {
+        return copy("ExportDAO.exportThreadVotes.copy", con -> String.format(
+                "%s WHERE thread = %d ORDER BY nickname", VOTES, thread), csv, out);
+    }
+
+    private interface Query {
+        String build(Connection con) throws SQLException;
+    }
+
+    /**
+     * COPY takes no parameters, so the query is built on the connection that runs it, which
+     * knows how to quote literals for its server.
+     */
+    private long copy(String metric, Query query, boolean csv, OutputStream out) {
+        return metrics.time(metric, () -> template.execute((ConnectionCallback<Long>) con -> {
+            try {
+                return CopyStreams.copyOut(con, query.build(con), csv, out);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }));
+    }
+
+    private static String literal(Connection con, String value) throws SQLException {
+        return "'" + con.unwrap(PGConnection.class).escapeLiteral(value) + "'";
+    }
+}
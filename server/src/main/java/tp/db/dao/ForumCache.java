@@ -0,0 +1,111 @@
+package tp.db.dao;
+
+import org.springframework.stereotype.Component;
+import tp.db.models.CacheStats;
+import tp.db.models.Forum;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Forum identity keyed by lower-cased slug, with the posts/threads counters kept in adders.
+ *
+ * Counter changes are announced before the counter rows are updated and applied to the cached
+ * entry in afterCommit. Spring runs afterCommit for every synchronization before any
+ * afterCompletion, in registration order, so a forum version bumped after the announcement
+ * is only handed out once the entry holds the change. A row read while such a change is in
+ * flight, or read before a change that has since committed, is never cached, so cached
+ * counters stay equal to the sum of the committed counter rows.
+ */
+@Component
+public class ForumCache {
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final WriteGuard guard = new WriteGuard();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private static class Entry {
+        private final String slug;
+        private final String title;
+        private final String user;
+        private final LongAdder posts = new LongAdder();
+        private final LongAdder threads = new LongAdder();
+
+        private Entry(Forum forum) {
+            slug = forum.getSlug();
+            title = forum.getTitle();
+            user = forum.getUser();
+            posts.add(forum.getPosts());
+            threads.add(forum.getThreads());
+        }
+
+        private Forum toForum() {
+            Forum forum = new Forum();
+            forum.setSlug(slug);
+            forum.setTitle(title);
+            forum.setUser(user);
+            forum.setPosts(posts.sum());
+            forum.setThreads(threads.intValue());
+            return forum;
+        }
+    }
+
+    private static String key(String slug) {
+        return slug.toLowerCase(Locale.ROOT);
+    }
+
+    public Forum get(String slug) {
+        Entry entry = entries.get(key(slug));
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.toForum();
+    }
+
+    /**
+     * Must be taken before the forum row is read; returns -1 while a counter change is in flight.
+     */
+    public long stamp(String slug) {
+        return guard.stamp(key(slug));
+    }
+
+    public void put(Forum forum, long stamp) {
+        String key = key(forum.getSlug());
+        entries.compute(key, (k, entry) -> {
+            if (entry != null) {
+                return entry;
+            }
+            return guard.unchanged(key, stamp) ? new Entry(forum) : null;
+        });
+    }
+
+    public void addPosts(String slug, long delta) {
+        add(slug, delta, 0);
+    }
+
+    public void addThreads(String slug, int delta) {
+        add(slug, 0, delta);
+    }
+
+    private void add(String slug, long posts, int threads) {
+        final String key = key(slug);
+        guard.begin(key, () -> entries.computeIfPresent(key, (k, entry) -> {
+            entry.posts.add(posts);
+            entry.threads.add(threads);
+            return entry;
+        }));
+    }
+
+    public void clear() {
+        guard.clear();
+        entries.clear();
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), entries.size());
+    }
+}
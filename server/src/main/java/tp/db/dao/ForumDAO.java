@@ -0,0 +1,223 @@
+package tp.db.dao;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tp.db.metrics.Metrics;
+import tp.db.models.Forum;
+import tp.db.models.User;
+import tp.db.pool.ReadRouting;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+@Service
+@Transactional
+public class ForumDAO {
+    static final String SELECT_BY_SLUG = "SELECT f.slug, f.title, f.\"user\", " +
+            "COALESCE (c.posts, 0) AS posts, COALESCE (c.threads, 0) AS threads FROM forum f, " +
+            "LATERAL (SELECT SUM(posts) AS posts, SUM(threads) AS threads FROM forum_counters " +
+            "WHERE forum = f.slug) c WHERE LOWER (f.slug) = LOWER (?)";
+    static final String SELECT_BY_SLUGS = "SELECT n.requested, f.slug, f.title, f.\"user\", " +
+            "COALESCE (c.posts, 0) AS posts, COALESCE (c.threads, 0) AS threads FROM " +
+            "unnest(?::TEXT[]) AS n(requested) JOIN forum f ON LOWER (f.slug) = " +
+            "LOWER (n.requested) CROSS JOIN LATERAL (SELECT SUM(posts) AS posts, SUM(threads) " +
+            "AS threads FROM forum_counters WHERE forum = f.slug) c";
+
+    private final JdbcTemplate template;
+    private final Metrics metrics;
+    private final UserDAO userDAO;
+    private final ForumCache cache;
+    private final StatusCounters counters;
+    private final ReadRouting routing;
+    private final EntityVersions versions;
+    private final Coalescer<String, Forum> lookups;
+    private final int shards;
+
+    public ForumDAO(JdbcTemplate template, Metrics metrics, UserDAO userDAO, ForumCache cache,
+                    StatusCounters counters, ReadRouting routing, EntityVersions versions,
+                    Coalescers coalescers,
+                    @Value("${db.forum-counters.shards:16}") int shards) {
+        this.template = template;
+        this.metrics = metrics;
+        this.userDAO = userDAO;
+        this.cache = cache;
+        this.counters = counters;
+        this.routing = routing;
+        this.versions = versions;
+        this.lookups = coalescers.create(this::selectForum, this::selectForums);
+        this.shards = shards;
+    }
+
+    public static class ForumRowMapper implements RowMapper<Forum>
+    {
+        public Forum mapRow(ResultSet rs, int rowNum) throws SQLException {
+            Forum forum = new Forum();
+            forum.setPosts(rs.getLong("posts"));
+            forum.setSlug(rs.getString("slug"));
+            forum.setThreads(rs.getInt("threads"));
+            forum.setTitle(rs.getString("title"));
+            forum.setUser(rs.getString("user"));
+            return forum;
+        }
+    }
+
+    public Forum createForum(final Forum forum) {
+        try {
+            User user = userDAO.getUserByNickname(forum.getUser());
+            if(user == null) {
+                throw new UserDAO.NoSuchUserException(forum.getUser());
+            }
+            forum.setUser(user.getNickname());
+            long stamp = cache.stamp(forum.getSlug());
+            metrics.run("ForumDAO.createForum.insert", () -> template.update(con -> {
+                PreparedStatement pst = con.prepareStatement(
+                        "INSERT INTO forum(slug, title, \"user\") " +
+                                "VALUES (?, ?, ?)");
+                pst.setString(1, forum.getSlug());
+                pst.setString(2, forum.getTitle());
+                pst.setString(3, forum.getUser());
+                return pst;
+            }));
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronizationAdapter() {
+                        @Override
+                        public void afterCommit() {
+                            cache.put(forum, stamp);
+                        }
+                    });
+            counters.addForums(1);
+            versions.forumChanged(forum.getSlug());
+            return forum;
+        } catch (UserDAO.NoSuchUserException ex) {
+            throw ex;
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public Forum getForumBySlug(final String slug) {
+        Forum cached = cache.get(slug);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = cache.stamp(slug);
+        Forum forum = lookups.get(slug);
+        if (forum != null && !routing.readsReplica()) {
+            cache.put(forum, stamp);
+        }
+        return forum;
+    }
+
+    private Forum selectForum(final String slug) {
+        List<Forum> result = metrics.time("ForumDAO.getForumBySlug.select",
+                () -> template.query(connection -> {
+            PreparedStatement pst = connection.prepareStatement(SELECT_BY_SLUG);
+            pst.setString(1, slug);
+            return pst;
+        }, new ForumRowMapper()));
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    private Map<String, Forum> selectForums(final List<String> slugs) {
+        Map<String, Forum> result = new HashMap<>();
+        ForumRowMapper mapper = new ForumRowMapper();
+        metrics.run("ForumDAO.getForumBySlug.batch", () -> template.query(con -> {
+            PreparedStatement pst = con.prepareStatement(SELECT_BY_SLUGS);
+            pst.setArray(1, con.createArrayOf("text", slugs.toArray()));
+            return pst;
+        }, rs -> {
+            result.put(rs.getString("requested"), mapper.mapRow(rs, 0));
+        }));
+        return result;
+    }
+
+    public void addPosts(String slug, long delta) {
+        cache.addPosts(slug, delta);
+        versions.forumChanged(slug);
+        addCounters(slug, delta, 0);
+    }
+
+    public void addThreads(String slug, int delta) {
+        cache.addThreads(slug, delta);
+        versions.forumChanged(slug);
+        addCounters(slug, 0, delta);
+    }
+
+    /**
+     * Bulk form of addPosts and addThreads: announces every forum to the cache, then adds all
+     * of their counters in one upsert. Call last in the transaction.
+     */
+    public void addCounters(Map<String, Long> posts, Map<String, Integer> threads) {
+        Set<String> slugs = new TreeSet<>(posts.keySet());
+        slugs.addAll(threads.keySet());
+        if(slugs.isEmpty()) {
+            return;
+        }
+        List<Long> postDeltas = new ArrayList<>(slugs.size());
+        List<Integer> threadDeltas = new ArrayList<>(slugs.size());
+        for (String slug : slugs) {
+            long postDelta = posts.getOrDefault(slug, 0L);
+            int threadDelta = threads.getOrDefault(slug, 0);
+            if(postDelta != 0) {
+                cache.addPosts(slug, postDelta);
+            }
+            if(threadDelta != 0) {
+                cache.addThreads(slug, threadDelta);
+            }
+            versions.forumChanged(slug);
+            postDeltas.add(postDelta);
+            threadDeltas.add(threadDelta);
+        }
+        final int shard = ThreadLocalRandom.current().nextInt(shards);
+        metrics.run("ForumDAO.addCounters.bulk", () -> template.update(con -> {
+            PreparedStatement pst = con.prepareStatement("INSERT INTO forum_counters(forum, " +
+                    "shard, posts, threads) SELECT c.forum, ?, c.posts, c.threads FROM " +
+                    "unnest(?::TEXT[], ?::INT8[], ?::INT4[]) AS c(forum, posts, threads) " +
+                    "ON CONFLICT (forum, shard) DO UPDATE SET posts = forum_counters.posts + " +
+                    "EXCLUDED.posts, threads = forum_counters.threads + EXCLUDED.threads");
+            pst.setInt(1, shard);
+            pst.setArray(2, con.createArrayOf("text", slugs.toArray()));
+            pst.setArray(3, con.createArrayOf("int8", postDeltas.toArray()));
+            pst.setArray(4, con.createArrayOf("int4", threadDeltas.toArray()));
+            return pst;
+        }));
+    }
+
+    /**
+     * Counters are spread over shard rows that are summed on read, so concurrent writers to
+     * one forum lock different rows. Call last in the transaction: the row stays locked
+     * until commit.
+     */
+    private void addCounters(final String slug, final long posts, final int threads) {
+        final int shard = ThreadLocalRandom.current().nextInt(shards);
+        metrics.run("ForumDAO.addCounters.upsert", () -> template.update(con -> {
+            PreparedStatement pst = con.prepareStatement("INSERT INTO forum_counters(forum, " +
+                    "shard, posts, threads) VALUES (?, ?, ?, ?) ON CONFLICT (forum, shard) DO " +
+                    "UPDATE SET posts = forum_counters.posts + EXCLUDED.posts, threads = " +
+                    "forum_counters.threads + EXCLUDED.threads");
+            pst.setString(1, slug);
+            pst.setInt(2, shard);
+            pst.setLong(3, posts);
+            pst.setInt(4, threads);
+            return pst;
+        }));
+    }
+
+    public static class NoSuchForumException extends RuntimeException {
+        public NoSuchForumException(String slug) {
+            super(String.format("Can't find forum with slug %s", slug));
+        }
+    }
+}
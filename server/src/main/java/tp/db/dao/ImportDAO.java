@@ -0,0 +1,339 @@
+package tp.db.dao;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tp.db.metrics.Metrics;
+import tp.db.models.Thread;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk loads of users, forums, threads, posts and votes. Each load copies its stream into a
+ * temporary staging table with COPY and then moves the rows into place with a few set-based
+ * statements: references are resolved case-insensitively like the API does, post paths are
+ * built one tree level per statement, and forum counters, forum users and vote totals are
+ * updated for all loaded rows at once. A load is one transaction and either succeeds as a
+ * whole or leaves nothing behind.
+ *
+ * Rows may carry their ids; the id sequences are moved past the largest one loaded. A post id
+ * that repeats within a load or is already stored rejects the load.
+ */
+@Service
+@Transactional
+public class ImportDAO {
+    private static final Map<String, String> USERS = fields(
+            "nickname", "nickname", "fullname", "fullname", "email", "email", "about", "about");
+    private static final Map<String, String> FORUMS = fields(
+            "slug", "slug", "title", "title", "user", "\"user\"");
+    private static final Map<String, String> THREADS = fields(
+            "id", "id", "slug", "slug", "title", "title", "author", "author", "forum", "forum",
+            "message", "message", "created", "created");
+    private static final Map<String, String> POSTS = fields(
+            "id", "id", "parent", "parent", "author", "author", "message", "message",
+            "isEdited", "is_edited", "thread", "thread", "created", "created");
+    private static final Map<String, String> VOTES = fields(
+            "nickname", "nickname", "voice", "voice", "thread", "thread");
+
+    private final JdbcTemplate template;
+    private final Metrics metrics;
+    private final ObjectMapper mapper;
+    private final ForumDAO forumDAO;
+    private final StatusCounters counters;
+    private final EntityVersions versions;
+
+    public ImportDAO(JdbcTemplate template, Metrics metrics, ObjectMapper mapper,
+                     ForumDAO forumDAO, StatusCounters counters, EntityVersions versions) {
+        this.template = template;
+        this.metrics = metrics;
+        this.mapper = mapper;
+        this.forumDAO = forumDAO;
+        this.counters = counters;
+        this.versions = versions;
+    }
+
+    private static Map<String, String> fields(String... fieldsAndColumns) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < fieldsAndColumns.length; i += 2) {
+            result.put(fieldsAndColumns[i], fieldsAndColumns[i + 1]);
+        }
+        return result;
+    }
+
+    public long importUsers(InputStream in, boolean csv) {
+        stage("import_users", "nickname TEXT, fullname TEXT, email TEXT, about TEXT",
+                USERS, in, csv);
+        int rows = metrics.time("ImportDAO.importUsers.insert", () -> template.update(
+                "INSERT INTO users(nickname, fullname, email, about) " +
+                "SELECT nickname, fullname, email, about FROM import_users"));
+        counters.addUsers(rows);
+        versions.usersChanged(keys("ImportDAO.importUsers.versions",
+                "SELECT nickname FROM import_users"));
+        return rows;
+    }
+
+    public long importForums(InputStream in, boolean csv) {
+        stage("import_forums", "slug TEXT, title TEXT, \"user\" TEXT", FORUMS, in, csv);
+        String user = first("ImportDAO.importForums.users", "SELECT s.\"user\" FROM " +
+                "import_forums s WHERE NOT EXISTS (SELECT 1 FROM users u WHERE " +
+                "LOWER (u.nickname) = LOWER (s.\"user\")) LIMIT 1");
+        if(user != null) {
+            throw new UserDAO.NoSuchUserException(user);
+        }
+        int rows = metrics.time("ImportDAO.importForums.insert", () -> template.update(
+                "INSERT INTO forum(slug, title, \"user\") SELECT s.slug, s.title, u.nickname " +
+                "FROM import_forums s JOIN users u ON LOWER (u.nickname) = LOWER (s.\"user\")"));
+        counters.addForums(rows);
+        versions.forumsChanged(keys("ImportDAO.importForums.versions",
+                "SELECT slug FROM import_forums"));
+        return rows;
+    }
+
+    public long importThreads(InputStream in, boolean csv) {
+        stage("import_threads", "id INT, slug TEXT, title TEXT, author TEXT, forum TEXT, " +
+                "message TEXT, created TIMESTAMPTZ", THREADS, in, csv);
+        String author = first("ImportDAO.importThreads.users", "SELECT s.author FROM " +
+                "import_threads s WHERE NOT EXISTS (SELECT 1 FROM users u WHERE " +
+                "LOWER (u.nickname) = LOWER (s.author)) LIMIT 1");
+        if(author != null) {
+            throw new UserDAO.NoSuchUserException(author);
+        }
+        String forum = first("ImportDAO.importThreads.forums", "SELECT s.forum FROM " +
+                "import_threads s WHERE NOT EXISTS (SELECT 1 FROM forum f WHERE " +
+                "LOWER (f.slug) = LOWER (s.forum)) LIMIT 1");
+        if(forum != null) {
+            throw new ForumDAO.NoSuchForumException(forum);
+        }
+        advanceSequence("thread_id_seq", "import_threads");
+        int rows = metrics.time("ImportDAO.importThreads.insert", () -> template.update(
+                "INSERT INTO thread(id, author, created, forum, message, slug, title, search) " +
+                "SELECT COALESCE (s.id, nextval('thread_id_seq')), u.nickname, " +
+                "COALESCE (s.created, CURRENT_TIMESTAMP), f.slug, s.message, s.slug, s.title, " +
+                "search_vector(s.title, s.message) " +
+                "FROM import_threads s JOIN users u ON LOWER (u.nickname) = LOWER (s.author) " +
+                "JOIN forum f ON LOWER (f.slug) = LOWER (s.forum)"));
+        metrics.run("ImportDAO.importThreads.forumUsers", () -> template.update(
+                "INSERT INTO forum_users(forum, nickname, fullname, email, about) " +
+                "SELECT DISTINCT f.slug, u.nickname, u.fullname, u.email, u.about " +
+                "FROM import_threads s JOIN users u ON LOWER (u.nickname) = LOWER (s.author) " +
+                "JOIN forum f ON LOWER (f.slug) = LOWER (s.forum) ORDER BY f.slug, " +
+                "u.nickname ON CONFLICT DO NOTHING"));
+
+        Map<String, Integer> threads = new HashMap<>();
+        metrics.run("ImportDAO.importThreads.counts", () -> template.query(
+                "SELECT f.slug, COUNT(*) AS threads FROM import_threads s JOIN forum f " +
+                "ON LOWER (f.slug) = LOWER (s.forum) GROUP BY f.slug", rs -> {
+            threads.put(rs.getString("slug"), rs.getInt("threads"));
+        }));
+        counters.addThreads(rows);
+        forumDAO.addCounters(new HashMap<>(), threads);
+        versions.threadsChanged(threads("ImportDAO.importThreads.versions",
+                "SELECT id, slug FROM thread WHERE id IN (SELECT id FROM import_threads) " +
+                "OR LOWER (slug) IN (SELECT LOWER (slug) FROM import_threads)"));
+        return rows;
+    }
+
+    public long importPosts(InputStream in, boolean csv) {
+        stage("import_posts", "id BIGINT, parent BIGINT, author TEXT, message TEXT, " +
+                "is_edited BOOLEAN, thread INT, created TIMESTAMPTZ", POSTS, in, csv);
+        String thread = first("ImportDAO.importPosts.threads", "SELECT s.thread FROM " +
+                "import_posts s WHERE NOT EXISTS (SELECT 1 FROM thread t WHERE t.id = s.thread) " +
+                "LIMIT 1");
+        if(thread != null) {
+            throw new ThreadDAO.NoSuchThreadException(thread);
+        }
+        String author = first("ImportDAO.importPosts.users", "SELECT s.author FROM " +
+                "import_posts s WHERE NOT EXISTS (SELECT 1 FROM users u WHERE " +
+                "LOWER (u.nickname) = LOWER (s.author)) LIMIT 1");
+        if(author != null) {
+            throw new UserDAO.NoSuchUserException(author);
+        }
+        // Posts created meanwhile lock post_ids before they draw their ids, so under this lock
+        // the sequence stays put: every stored id was drawn from it or moved it forward, and
+        // only loaded ids up to its value before the load can collide.
+        metrics.run("ImportDAO.importPosts.lock", () -> template.execute(
+                "LOCK TABLE post_ids IN SHARE ROW EXCLUSIVE MODE"));
+        long last = metrics.time("ImportDAO.importPosts.last", () -> template.queryForObject(
+                "SELECT CASE WHEN is_called THEN last_value ELSE 0 END FROM post_id_seq",
+                Long.class));
+        advanceSequence("post_id_seq", "import_posts");
+        String id = first("ImportDAO.importPosts.duplicates", "SELECT id FROM import_posts " +
+                "WHERE id IS NOT NULL GROUP BY id HAVING COUNT(*) > 1 LIMIT 1");
+        if(id != null) {
+            throw new DuplicateKeyException(String.format("Post with id %s is loaded twice", id));
+        }
+        id = first("ImportDAO.importPosts.existing", "SELECT s.id FROM import_posts s " +
+                "WHERE s.id <= ? AND EXISTS (SELECT 1 FROM post_ids p WHERE p.id = s.id) " +
+                "LIMIT 1", last);
+        if(id != null) {
+            throw new DuplicateKeyException(String.format("Post with id %s already exists", id));
+        }
+        metrics.run("ImportDAO.importPosts.ids", () -> template.update(
+                "UPDATE import_posts SET id = nextval('post_id_seq') WHERE id IS NULL"));
+
+        // Paths are built one tree level per statement, each joining only the posts of the
+        // level before through the index on parent. Posts answering a post that is already
+        // stored start from its path.
+        metrics.run("ImportDAO.importPosts.paths", () -> {
+            template.execute("CREATE INDEX ON import_posts (id)");
+            template.execute("CREATE INDEX ON import_posts (parent)");
+            template.execute("ANALYZE import_posts");
+            template.execute("CREATE TEMP TABLE import_paths (id BIGINT, thread INT, " +
+                    "path BIGINT[], depth INT) ON COMMIT DROP");
+            template.execute("CREATE INDEX ON import_paths (depth)");
+            template.update("INSERT INTO import_paths(id, thread, path, depth) SELECT id, " +
+                    "thread, ARRAY[id], 0 FROM import_posts WHERE COALESCE (parent, 0) = 0");
+            template.update("INSERT INTO import_paths(id, thread, path, depth) SELECT s.id, " +
+                    "s.thread, p.path || s.id, 0 FROM import_posts s JOIN post p ON " +
+                    "p.thread = s.thread AND p.id = s.parent WHERE s.parent <> 0 AND NOT " +
+                    "EXISTS (SELECT 1 FROM import_posts x WHERE x.id = s.parent)");
+            template.execute("ANALYZE import_paths");
+            int depth = 0;
+            while (template.update("INSERT INTO import_paths(id, thread, path, depth) " +
+                    "SELECT s.id, s.thread, t.path || s.id, t.depth + 1 FROM import_paths t " +
+                    "JOIN import_posts s ON s.parent = t.id AND s.thread = t.thread " +
+                    "WHERE t.depth = ?", depth) > 0) {
+                depth++;
+            }
+        });
+        String parent = first("ImportDAO.importPosts.parents", "SELECT s.parent FROM " +
+                "import_posts s WHERE NOT EXISTS (SELECT 1 FROM import_paths p WHERE " +
+                "p.id = s.id) LIMIT 1");
+        if(parent != null) {
+            throw new PostDAO.NoSuchPostException(Long.valueOf(parent));
+        }
+
+        metrics.run("ImportDAO.importPosts.ids", () -> template.update(
+                "INSERT INTO post_ids(id, thread) SELECT id, thread FROM import_posts"));
+        int rows = metrics.time("ImportDAO.importPosts.insert", () -> template.update(
+                "INSERT INTO post(id, author, created, forum, is_edited, message, parent, " +
+                "thread, path, root, search) SELECT s.id, u.nickname, COALESCE (s.created, " +
+                "CURRENT_TIMESTAMP), t.forum, COALESCE (s.is_edited, FALSE), s.message, " +
+                "COALESCE (s.parent, 0), s.thread, p.path, p.path[1], " +
+                "search_vector(NULL, s.message) FROM import_posts s " +
+                "JOIN import_paths p ON p.id = s.id JOIN thread t ON t.id = s.thread " +
+                "JOIN users u ON LOWER (u.nickname) = LOWER (s.author) " +
+                "ORDER BY s.thread, p.path"));
+        metrics.run("ImportDAO.importPosts.forumUsers", () -> template.update(
+                "INSERT INTO forum_users(forum, nickname, fullname, email, about) " +
+                "SELECT DISTINCT t.forum, u.nickname, u.fullname, u.email, u.about " +
+                "FROM import_posts s JOIN thread t ON t.id = s.thread JOIN users u " +
+                "ON LOWER (u.nickname) = LOWER (s.author) ORDER BY t.forum, u.nickname " +
+                "ON CONFLICT DO NOTHING"));
+
+        Map<String, Long> posts = new HashMap<>();
+        metrics.run("ImportDAO.importPosts.counts", () -> template.query(
+                "SELECT t.forum, COUNT(*) AS posts FROM import_posts s JOIN thread t " +
+                "ON t.id = s.thread GROUP BY t.forum", rs -> {
+            posts.put(rs.getString("forum"), rs.getLong("posts"));
+        }));
+        counters.addPosts(rows);
+        forumDAO.addCounters(posts, new HashMap<>());
+        versions.postsChanged(threads("ImportDAO.importPosts.versions",
+                "SELECT id, slug FROM thread WHERE id IN (SELECT thread FROM import_posts)"));
+        return rows;
+    }
+
+    /**
+     * A later vote of the same user on the same thread replaces an earlier one, in the load
+     * as through the API. The loaded threads are locked before their totals are recounted,
+     * so a vote cast through the API meanwhile either is counted or waits for the load.
+     */
+    public long importVotes(InputStream in, boolean csv) {
+        stage("import_votes", "ord BIGSERIAL, nickname TEXT, voice SMALLINT, thread INT",
+                VOTES, in, csv);
+        String thread = first("ImportDAO.importVotes.threads", "SELECT s.thread FROM " +
+                "import_votes s WHERE NOT EXISTS (SELECT 1 FROM thread t WHERE t.id = s.thread) " +
+                "LIMIT 1");
+        if(thread != null) {
+            throw new ThreadDAO.NoSuchThreadException(thread);
+        }
+        String nickname = first("ImportDAO.importVotes.users", "SELECT s.nickname FROM " +
+                "import_votes s WHERE NOT EXISTS (SELECT 1 FROM users u WHERE " +
+                "LOWER (u.nickname) = LOWER (s.nickname)) LIMIT 1");
+        if(nickname != null) {
+            throw new UserDAO.NoSuchUserException(nickname);
+        }
+
+        metrics.run("ImportDAO.importVotes.lock", () -> template.query(
+                "SELECT id FROM thread WHERE id IN (SELECT thread FROM import_votes) " +
+                "ORDER BY id FOR UPDATE", rs -> {}));
+        int rows = metrics.time("ImportDAO.importVotes.upsert", () -> template.update(
+                "INSERT INTO vote(nickname, voice, thread) SELECT DISTINCT ON (s.thread, " +
+                "u.nickname) u.nickname, s.voice, s.thread FROM import_votes s JOIN users u " +
+                "ON LOWER (u.nickname) = LOWER (s.nickname) ORDER BY s.thread, u.nickname, " +
+                "s.ord DESC ON CONFLICT (thread, nickname) DO UPDATE SET voice = EXCLUDED.voice"));
+        metrics.run("ImportDAO.importVotes.totals", () -> template.update(
+                "UPDATE thread t SET votes = v.votes FROM (SELECT thread, SUM(voice) AS votes " +
+                "FROM vote WHERE thread IN (SELECT thread FROM import_votes) GROUP BY thread) v " +
+                "WHERE t.id = v.thread"));
+        versions.threadsChanged(threads("ImportDAO.importVotes.versions",
+                "SELECT id, slug FROM thread WHERE id IN (SELECT thread FROM import_votes)"));
+        return rows;
+    }
+
+    private void stage(String table, String columns, Map<String, String> fields,
+                       InputStream in, boolean csv) {
+        template.execute(String.format("CREATE TEMP TABLE %s (%s) ON COMMIT DROP",
+                table, columns));
+        metrics.run("ImportDAO.copy", () -> template.execute((ConnectionCallback<Long>) con -> {
+            try {
+                if(csv) {
+                    return CopyStreams.copyCsv(con, table, fields, in);
+                }
+                return CopyStreams.copyJson(con, table, fields, mapper.reader(), in);
+            } catch (JsonProcessingException ex) {
+                throw new BadImportException(ex.getOriginalMessage());
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }));
+        template.execute(String.format("ANALYZE %s", table));
+    }
+
+    private String first(String query, String sql, Object... args) {
+        List<String> result = metrics.time(query,
+                () -> template.queryForList(sql, String.class, args));
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    private List<String> keys(String query, String sql) {
+        return metrics.time(query, () -> template.queryForList(sql, String.class));
+    }
+
+    private List<Thread> threads(String query, String sql) {
+        return metrics.time(query, () -> template.query(sql, (rs, rowNum) -> {
+            Thread thread = new Thread();
+            thread.setId(rs.getInt("id"));
+            thread.setSlug(rs.getString("slug"));
+            return thread;
+        }));
+    }
+
+    /**
+     * Moves the sequence past the largest id in the staging table, so that ids drawn later
+     * for rows without one do not collide with loaded ones.
+     */
+    private void advanceSequence(String sequence, String table) {
+        metrics.run("ImportDAO.advanceSequence", () -> template.query(String.format(
+                "SELECT setval('%1$s', MAX(id)) FROM %2$s HAVING MAX(id) > (SELECT CASE WHEN " +
+                "is_called THEN last_value ELSE last_value - 1 END FROM %1$s)",
+                sequence, table), rs -> {}));
+    }
+
+    public static class BadImportException extends RuntimeException {
+        public BadImportException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package tp.db.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.function.Function;
+
+/**
+ * Opaque page tokens: the full sort key of the last row a page returned, tagged with the
+ * listing and direction it came from, so that the next page starts right after that row with
+ * a range scan of the listing's index instead of looking the row up again.
+ */
+public final class PageCursors {
+    private PageCursors() {}
+
+    static String encode(String listing, Object... key) {
+        StringBuilder token = new StringBuilder(listing);
+        for (Object part : key) {
+            token.append(' ').append(part);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                token.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Splits a token of the given listing into its key parts and hands them to parse, which
+     * may throw on a malformed part. Only the last part may contain spaces.
+     */
+    static <T> T decode(String cursor, String listing, int parts, Function<String[], T> parse) {
+        try {
+            String[] token = new String(Base64.getUrlDecoder().decode(cursor),
+                    StandardCharsets.UTF_8).split(" ", parts + 1);
+            if(token.length == parts + 1 && token[0].equals(listing)) {
+                return parse.apply(Arrays.copyOfRange(token, 1, token.length));
+            }
+        } catch (IllegalArgumentException | DateTimeException ex) {}
+        throw new BadCursorException(cursor);
+    }
+
+    public static class BadCursorException extends RuntimeException {
+        public BadCursorException(String cursor) {
+            super(String.format("Can't resume listing after %s", cursor));
+        }
+    }
+}
@@ -0,0 +1,542 @@
+package tp.db.dao;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tp.db.metrics.Metrics;
+import tp.db.models.*;
+import tp.db.models.Thread;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+@Service
+@Transactional
+public class PostDAO {
+    private static final String COLUMNS = "id, author, created, forum, is_edited, message, parent, " +
+            "thread";
+    /**
+     * Finds the partition to read through post_ids, which the planner prunes by at run time.
+     */
+    private static final String BY_ID = "thread = (SELECT thread FROM post_ids WHERE id = ?) " +
+            "AND id = ?";
+    static final String SELECT_BY_ID = "SELECT " + COLUMNS + " FROM post WHERE " + BY_ID;
+
+    private final JdbcTemplate template;
+    private final NamedParameterJdbcTemplate namedTemplate;
+    private final Metrics metrics;
+    private final UserDAO userDAO;
+    private final ThreadDAO threadDAO;
+    private final ForumDAO forumDAO;
+    private final StatusCounters counters;
+    private final EntityVersions versions;
+
+    public PostDAO(JdbcTemplate template, NamedParameterJdbcTemplate namedTemplate,
+                   Metrics metrics, UserDAO userDAO, ThreadDAO threadDAO, ForumDAO forumDAO,
+                   StatusCounters counters, EntityVersions versions) {
+        this.template = template;
+        this.namedTemplate = namedTemplate;
+        this.metrics = metrics;
+        this.userDAO = userDAO;
+        this.threadDAO = threadDAO;
+        this.forumDAO = forumDAO;
+        this.counters = counters;
+        this.versions = versions;
+    }
+
+    private static String formatCreated(Timestamp created) {
+        return LocalDateTime.ofInstant(created.toInstant(), ZoneOffset.ofHours(0))
+                .format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'"));
+    }
+
+    public static class PostRowMapper implements RowMapper<Post> {
+        public Post mapRow(ResultSet rs, int rowNum) throws SQLException {
+            Post post = new Post();
+            post.setAuthor(rs.getString("author"));
+            post.setCreated(formatCreated(rs.getTimestamp("created")));
+            post.setForum(rs.getString("forum"));
+            post.setId(rs.getInt("id"));
+            post.setMessage(rs.getString("message"));
+            post.setEdited(rs.getBoolean("is_edited"));
+            post.setParent(rs.getLong("parent"));
+            post.setThread(rs.getInt("thread"));
+            return post;
+        }
+    }
+
+    public List<Post> createPost(final String slug, List<Post> posts) {
+        try {
+            Thread thread = threadDAO.getThreadIdentity(slug);
+            if(thread == null) {
+                throw new ThreadDAO.NoSuchThreadException(slug);
+            }
+            if(posts.isEmpty()) {
+                return posts;
+            }
+
+            Set<String> nicknames = new HashSet<>();
+            Set<Long> parents = new HashSet<>();
+            for (Post post : posts) {
+                nicknames.add(post.getAuthor());
+                if(post.getParent() != 0) {
+                    parents.add(post.getParent());
+                }
+            }
+            Map<String, String> authors = userDAO.getNicknames(nicknames);
+            Map<Long, Long[]> paths = getPathsById(thread.getId(), parents);
+            // Drawing the ids by inserting them locks post_ids before the sequence is read,
+            // so a load that moves the sequence waits for them or they come after it.
+            List<Long> ids = metrics.time("PostDAO.createPost.ids", () -> template.queryForList(
+                    "INSERT INTO post_ids(id, thread) SELECT nextval('post_id_seq'), ? " +
+                    "FROM generate_series(1, ?) RETURNING id",
+                    new Object[] { thread.getId(), posts.size() }, Long.class));
+            Collections.sort(ids);
+
+            final List<Long[]> postPaths = new ArrayList<>(posts.size());
+            for (int i = 0; i < posts.size(); i++) {
+                Post post = posts.get(i);
+                Long[] parentPath = new Long[0];
+                if(post.getParent() != 0) {
+                    parentPath = paths.get(post.getParent());
+                    if(parentPath == null) {
+                        throw new NoSuchPostException(post.getParent());
+                    }
+                }
+                String author = authors.get(post.getAuthor());
+                if(author == null) {
+                    throw new UserDAO.NoSuchUserException(post.getAuthor());
+                }
+                post.setId(ids.get(i));
+                post.setAuthor(author);
+                post.setThread(thread.getId());
+                post.setForum(thread.getForum());
+                post.setCreated(thread.getCreated());
+
+                Long[] path = Arrays.copyOf(parentPath, parentPath.length + 1);
+                path[parentPath.length] = post.getId();
+                paths.put(post.getId(), path);
+                postPaths.add(path);
+            }
+
+            metrics.run("PostDAO.createPost.insert", () -> template.batchUpdate(
+                    "INSERT INTO post(id, author, created, forum, is_edited, message, " +
+                    "parent, thread, path, root, search) VALUES (?, ?, COALESCE(?::TIMESTAMPTZ, " +
+                    "CURRENT_TIMESTAMP), ?, ?, ?, ?, ?, ?, ?, search_vector(NULL, ?))",
+                    new BatchPreparedStatementSetter() {
+                public void setValues(PreparedStatement pst, int i) throws SQLException {
+                    Post post = posts.get(i);
+                    pst.setLong(1, post.getId());
+                    pst.setString(2, post.getAuthor());
+                    pst.setString(3, post.getCreated());
+                    pst.setString(4, post.getForum());
+                    pst.setBoolean(5, post.isEdited());
+                    pst.setString(6, post.getMessage());
+                    pst.setLong(7, post.getParent());
+                    pst.setInt(8, post.getThread());
+                    pst.setArray(9, pst.getConnection().createArrayOf("int8", postPaths.get(i)));
+                    pst.setLong(10, postPaths.get(i)[0]);
+                    pst.setString(11, post.getMessage());
+                }
+
+                public int getBatchSize() {
+                    return posts.size();
+                }
+            }));
+            userDAO.addForumUsers(thread.getForum(), new HashSet<>(authors.values()));
+            counters.addPosts(posts.size());
+            versions.postsChanged(thread);
+            forumDAO.addPosts(thread.getForum(), posts.size());
+            return posts;
+
+        } catch (UserDAO.NoSuchUserException | DuplicateKeyException ex) {
+            throw ex;
+        }
+    }
+
+    private Map<Long, Long[]> getPathsById(final int thread, final Collection<Long> ids) {
+        Map<Long, Long[]> result = new HashMap<>();
+        if(ids.isEmpty()) {
+            return result;
+        }
+        metrics.run("PostDAO.createPost.parents", () -> template.query(con -> {
+            PreparedStatement pst = con.prepareStatement("SELECT id, path FROM post WHERE " +
+                    "thread = ? AND id = ANY (?)");
+            pst.setInt(1, thread);
+            pst.setArray(2, con.createArrayOf("int8", ids.toArray()));
+            return pst;
+        }, rs -> {
+            result.put(rs.getLong("id"), (Long[]) rs.getArray("path").getArray());
+        }));
+        return result;
+    }
+
+    private static String queryName(String method, String sort) {
+        if("tree".equals(sort) || "parent_tree".equals(sort)) {
+            return method + "." + sort;
+        }
+        return method + ".flat";
+    }
+
+    private static String postsListing(String sort, Boolean desc) {
+        if(!"tree".equals(sort) && !"parent_tree".equals(sort)) {
+            sort = "flat";
+        }
+        return "posts." + sort + (desc ? ".desc" : ".asc");
+    }
+
+    private static String pathLiteral(String key) {
+        StringBuilder path = new StringBuilder("{");
+        for (String part : key.split("\\.", -1)) {
+            if(path.length() > 1) {
+                path.append(',');
+            }
+            path.append(Long.parseLong(part));
+        }
+        return path.append('}').toString();
+    }
+
+    /**
+     * A cursor takes the place of since and carries the sort key of the last post: (created,
+     * id) for flat, the path for tree and the root for parent_tree, so no page has to look
+     * up the post it resumes after.
+     */
+    static void appendPostsQuery(int thread, Integer limit, Long since, String cursor,
+                                 String sort, Boolean desc, StringBuilder sql,
+                                 List<Object> params) {
+        if(sort == null) {
+            sort = "flat";
+        }
+        String listing = postsListing(sort, desc);
+
+        switch(sort) {
+            case "tree":
+                sql.append("SELECT " + COLUMNS + ", path FROM post WHERE thread = ?");
+                params.add(thread);
+                if(cursor != null) {
+                    params.add(PageCursors.decode(cursor, listing, 1,
+                            key -> pathLiteral(key[0])));
+                    if(desc) {
+                        sql.append(" AND path < ?::BIGINT[]");
+                    } else {
+                        sql.append(" AND path > ?::BIGINT[]");
+                    }
+                } else if(since != null) {
+                    params.add(thread);
+                    params.add(since);
+                    if(desc) {
+                        sql.append(" AND path < (SELECT post.path FROM post WHERE " +
+                                "post.thread = ? AND post.id = ?)");
+                    } else {
+                        sql.append(" AND path > (SELECT post.path FROM post WHERE " +
+                                "post.thread = ? AND post.id = ?)");
+                    }
+                }
+                sql.append(" ORDER BY post.path ");
+                if(desc) {
+                    sql.append("DESC");
+                } else {
+                    sql.append("ASC");
+                }
+                if(limit != null) {
+                    params.add(limit);
+                    sql.append(" LIMIT ?");
+                }
+                break;
+            case "parent_tree":
+                sql.append("WITH roots AS (SELECT id FROM post WHERE thread = ? AND parent = 0");
+                params.add(thread);
+                if(cursor != null) {
+                    params.add(PageCursors.decode(cursor, listing, 1,
+                            key -> Long.parseLong(key[0])));
+                    if(desc) {
+                        sql.append(" AND id < ?");
+                    } else {
+                        sql.append(" AND id > ?");
+                    }
+                } else if(since != null) {
+                    params.add(thread);
+                    params.add(since);
+                    params.add(thread);
+                    params.add(since);
+                    if(desc) {
+                        sql.append(" AND id <= (SELECT post.root FROM post WHERE " +
+                                "post.thread = ? AND post.id = ?) AND path < (SELECT post.path " +
+                                "FROM post WHERE post.thread = ? AND post.id = ?)");
+                    } else {
+                        sql.append(" AND id > (SELECT post.root FROM post WHERE " +
+                                "post.thread = ? AND post.id = ?) AND path > (SELECT post.path " +
+                                "FROM post WHERE post.thread = ? AND post.id = ?)");
+                    }
+                }
+                sql.append(" ORDER BY post.id ");
+                if(desc) {
+                    sql.append("DESC");
+                } else {
+                    sql.append("ASC");
+                }
+                if(limit != null) {
+                    params.add(limit);
+                    sql.append(" LIMIT ?");
+                }
+                sql.append(") SELECT " + COLUMNS + ", root FROM post WHERE thread = ? AND " +
+                        "root >= (SELECT MIN(id) FROM roots) AND root <= (SELECT MAX(id) FROM " +
+                        "roots) ORDER BY root ");
+                params.add(thread);
+                if(desc) {
+                    sql.append("DESC, path DESC");
+                } else {
+                    sql.append("ASC, path ASC");
+                }
+                break;
+            default: sql.append("SELECT " + COLUMNS + " FROM post WHERE thread = ?");
+                params.add(thread);
+                if(cursor != null) {
+                    List<Object> key = PageCursors.decode(cursor, listing, 2, parts ->
+                            Arrays.asList(Instant.parse(parts[0]).toString(),
+                                    Long.parseLong(parts[1])));
+                    if(desc) {
+                        params.add(key.get(0));
+                        params.addAll(key);
+                        sql.append(" AND created >= ?::TIMESTAMPTZ AND (created > " +
+                                "?::TIMESTAMPTZ OR id < ?)");
+                    } else {
+                        params.addAll(key);
+                        sql.append(" AND (created, id) > (?::TIMESTAMPTZ, ?)");
+                    }
+                } else if(since != null) {
+                    params.add(since);
+                    if(desc) {
+                        sql.append(" AND id < ?");
+                    } else {
+                        sql.append(" AND id > ?");
+                    }
+                }
+                // Descending only turns the id order around, as it always has: posts
+                // come oldest first, and those created together newest id first.
+                if(desc) {
+                    sql.append(" ORDER BY created, id DESC");
+                } else {
+                    sql.append(" ORDER BY created, id");
+                }
+                if(limit != null) {
+                    params.add(limit);
+                    sql.append(" LIMIT ?");
+                }
+                break;
+        }
+    }
+
+    /**
+     * Maps the posts of a page and remembers the sort key of the last one. Parent tree pages
+     * are full when they hold limit root posts, whatever the number of replies.
+     */
+    private class PageMapper implements RowMapper<Post> {
+        private final PostRowMapper posts = new PostRowMapper();
+        private final String sort;
+        private Object[] last;
+        private int roots;
+
+        PageMapper(String sort) {
+            this.sort = sort;
+        }
+
+        public Post mapRow(ResultSet rs, int rowNum) throws SQLException {
+            if("tree".equals(sort)) {
+                last = new Object[] {joinPath((Long[]) rs.getArray("path").getArray())};
+            } else if("parent_tree".equals(sort)) {
+                long root = rs.getLong("root");
+                if(last == null || (Long) last[0] != root) {
+                    last = new Object[] {root};
+                    roots++;
+                }
+            } else {
+                last = new Object[] {rs.getTimestamp("created").toInstant(), rs.getLong("id")};
+            }
+            return posts.mapRow(rs, rowNum);
+        }
+
+        String next(String listing, int rows, Integer limit) {
+            int count = "parent_tree".equals(sort) ? roots : rows;
+            if(limit == null || count < limit) {
+                return null;
+            }
+            return PageCursors.encode(listing, last);
+        }
+    }
+
+    private static String joinPath(Long[] path) {
+        StringBuilder key = new StringBuilder();
+        for (Long part : path) {
+            if(key.length() > 0) {
+                key.append('.');
+            }
+            key.append(part);
+        }
+        return key.toString();
+    }
+
+    @Transactional(readOnly = true)
+    public Page<Post> getPostsBySlugOrId(String slugOrId, Integer limit, Long since, String cursor,
+                                         String sort, Boolean desc) {
+        final StringBuilder sql = new StringBuilder();
+        ArrayList<Object> params = new ArrayList<>();
+
+        Thread thread = threadDAO.getThreadIdentity(slugOrId);
+
+        if(thread == null) {
+            throw new ThreadDAO.NoSuchThreadException(slugOrId);
+        }
+
+        appendPostsQuery(thread.getId(), limit, since, cursor, sort, desc, sql, params);
+        PageMapper mapper = new PageMapper(sort);
+        List<Post> result = metrics.time(queryName("PostDAO.getPostsBySlugOrId", sort),
+                () -> template.query(sql.toString(), params.toArray(), mapper));
+        if (result.isEmpty()) {
+            return null;
+        }
+        return new Page<>(result, mapper.next(postsListing(sort, desc), result.size(), limit));
+    }
+
+    @Transactional(readOnly = true)
+    public Post getPostById(Long id) {
+        List<Post> result = metrics.time("PostDAO.getPostById.select", () -> template.query(con -> {
+            PreparedStatement pst = con.prepareStatement(SELECT_BY_ID);
+            pst.setLong(1, id);
+            pst.setLong(2, id);
+            return pst;
+        }, new PostRowMapper()));
+        if(result.isEmpty()) {
+            throw new NoSuchPostException(id);
+        }
+        return result.get(0);
+    }
+
+    /**
+     * The post together with the requested relations, joined in one statement. The post's
+     * author, forum and thread are foreign keys, so the inner joins never drop the row.
+     */
+    @Transactional(readOnly = true)
+    public PostFull getPostDetails(long id, Collection<String> related) {
+        final boolean withUser = related.contains("user");
+        final boolean withForum = related.contains("forum");
+        final boolean withThread = related.contains("thread");
+
+        StringBuilder sql = new StringBuilder("SELECT p.id, p.author, p.created, p.forum, " +
+                "p.is_edited, p.message, p.parent, p.thread");
+        if (withUser) {
+            sql.append(", u.fullname AS user_fullname, u.email AS user_email, " +
+                    "u.about AS user_about");
+        }
+        if (withForum) {
+            sql.append(", f.title AS forum_title, f.\"user\" AS forum_user, " +
+                    "COALESCE (c.posts, 0) AS forum_posts, COALESCE (c.threads, 0) AS " +
+                    "forum_threads");
+        }
+        if (withThread) {
+            sql.append(", t.author AS thread_author, t.created AS thread_created, " +
+                    "t.message AS thread_message, t.slug AS thread_slug, " +
+                    "t.title AS thread_title, t.votes AS thread_votes");
+        }
+        sql.append(" FROM post p");
+        if (withUser) {
+            sql.append(" JOIN users u ON u.nickname = p.author");
+        }
+        if (withForum) {
+            sql.append(" JOIN forum f ON f.slug = p.forum CROSS JOIN LATERAL (SELECT " +
+                    "SUM(posts) AS posts, SUM(threads) AS threads FROM forum_counters WHERE " +
+                    "forum = f.slug) c");
+        }
+        if (withThread) {
+            sql.append(" JOIN thread t ON t.id = p.thread");
+        }
+        sql.append(" WHERE p.thread = (SELECT thread FROM post_ids WHERE id = ?) AND p.id = ?");
+
+        PostRowMapper postMapper = new PostRowMapper();
+        List<PostFull> result = metrics.time("PostDAO.getPostDetails.select",
+                () -> template.query(sql.toString(), new Object[]{id, id}, (rs, rowNum) -> {
+            Post post = postMapper.mapRow(rs, rowNum);
+            PostFull postFull = new PostFull();
+            postFull.setPost(post);
+            if (withUser) {
+                User author = new User();
+                author.setNickname(post.getAuthor());
+                author.setFullname(rs.getString("user_fullname"));
+                author.setEmail(rs.getString("user_email"));
+                author.setAbout(rs.getString("user_about"));
+                postFull.setAuthor(author);
+            }
+            if (withForum) {
+                Forum forum = new Forum();
+                forum.setSlug(post.getForum());
+                forum.setTitle(rs.getString("forum_title"));
+                forum.setUser(rs.getString("forum_user"));
+                forum.setPosts(rs.getLong("forum_posts"));
+                forum.setThreads(rs.getInt("forum_threads"));
+                postFull.setForum(forum);
+            }
+            if (withThread) {
+                Thread thread = new Thread();
+                thread.setId(post.getThread());
+                thread.setForum(post.getForum());
+                thread.setAuthor(rs.getString("thread_author"));
+                thread.setCreated(formatCreated(rs.getTimestamp("thread_created")));
+                thread.setMessage(rs.getString("thread_message"));
+                thread.setSlug(rs.getString("thread_slug"));
+                thread.setTitle(rs.getString("thread_title"));
+                thread.setVotes(rs.getInt("thread_votes"));
+                postFull.setThread(thread);
+            }
+            return postFull;
+        }));
+        if (result.isEmpty()) {
+            throw new NoSuchPostException(id);
+        }
+        return result.get(0);
+    }
+
+    /**
+     * The thread is looked up first: PostgreSQL before 14 only prunes the partitions an
+     * UPDATE writes to by values known when it is planned.
+     */
+    public Post updatePost(Long id, PostUpdate update) {
+        List<Integer> threads = metrics.time("PostDAO.updatePost.thread", () ->
+                template.queryForList("SELECT thread FROM post_ids WHERE id = ?",
+                        Integer.class, id));
+        if(threads.isEmpty()) {
+            throw new NoSuchPostException(id);
+        }
+        List<Post> result = metrics.time("PostDAO.updatePost.update", () -> template.query(con -> {
+            PreparedStatement pst = con.prepareStatement("UPDATE post SET message = ?," +
+                    "is_edited = TRUE, search = search_vector(NULL, ?) WHERE thread = ? AND " +
+                    "id = ? RETURNING " + COLUMNS);
+            pst.setString(1, update.getMessage());
+            pst.setString(2, update.getMessage());
+            pst.setInt(3, threads.get(0));
+            pst.setLong(4, id);
+            return pst;
+        }, new PostRowMapper()));
+        if(result.isEmpty()) {
+            throw new NoSuchPostException(id);
+        }
+        Post post = result.get(0);
+        versions.postsChanged(threadDAO.getThreadIdentity(String.valueOf(post.getThread())));
+        return post;
+    }
+
+    public static class NoSuchPostException extends RuntimeException {
+        public NoSuchPostException(Long id) {
+            super(String.format("Can't find post with id %s", id));
+        }
+    }
+}
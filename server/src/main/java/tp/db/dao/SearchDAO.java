@@ -0,0 +1,151 @@
+package tp.db.dao;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tp.db.metrics.Metrics;
+import tp.db.models.Post;
+import tp.db.models.SearchHit;
+import tp.db.models.Thread;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Full-text search over thread titles and messages and post messages, through the search
+ * columns the writers fill with search_vector and their GIN indexes, on (thread, search) for
+ * posts so that a forum's posts are searched thread by thread. Queries take web search
+ * syntax (quoted phrases, or, -word) and are parsed with the text search configuration the
+ * columns were built with, db.search.config. Hits come best first, ties broken by type and
+ * id, and a page resumes after the cursor of the last hit it saw. Pages are read whole, so
+ * they hold at most db.stream.threshold hits.
+ */
+@Service
+@Transactional(readOnly = true)
+public class SearchDAO {
+    private static final String THREAD_HITS = "SELECT 'thread' AS type, " +
+            "ts_rank(t.search, q.query) AS rank, t.id, t.author, t.created, t.forum, " +
+            "t.message, t.slug, t.title, t.votes, FALSE AS is_edited, 0::BIGINT AS parent, " +
+            "t.id AS thread FROM thread t, q WHERE t.forum = ? AND t.search @@ q.query";
+    private static final String POST_HITS = "SELECT 'post' AS type, " +
+            "ts_rank(p.search, q.query) AS rank, p.id, p.author, p.created, p.forum, " +
+            "p.message, NULL AS slug, NULL AS title, 0 AS votes, p.is_edited, p.parent, " +
+            "p.thread FROM q, ";
+    private static final String THREAD_POSTS = "post p WHERE p.thread = ? AND p.search @@ q.query";
+    // Each of the forum's threads reads its own partition: OFFSET 0 keeps the planner from
+    // joining the forum's threads to every partition at once.
+    private static final String FORUM_POSTS = "thread t CROSS JOIN LATERAL (SELECT * FROM post " +
+            "WHERE thread = t.id AND search @@ q.query OFFSET 0) p WHERE t.forum = ?";
+
+    private final JdbcTemplate template;
+    private final Metrics metrics;
+    private final String config;
+    private final int maxLimit;
+
+    public SearchDAO(JdbcTemplate template, Metrics metrics,
+                     @Value("${db.search.config:simple}") String config,
+                     @Value("${db.stream.threshold:1000}") int maxLimit) {
+        this.template = template;
+        this.metrics = metrics;
+        this.config = config;
+        this.maxLimit = maxLimit;
+    }
+
+    private static String formatCreated(Timestamp created) {
+        return LocalDateTime.ofInstant(created.toInstant(), ZoneOffset.ofHours(0))
+                .format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'"));
+    }
+
+    public List<SearchHit> searchForum(String forum, String query, int limit, String since) {
+        return search("SearchDAO.searchForum.select", "forum", forum, query, limit, since);
+    }
+
+    public List<SearchHit> searchThread(int thread, String query, int limit, String since) {
+        return search("SearchDAO.searchThread.select", "thread", thread, query, limit, since);
+    }
+
+    private List<SearchHit> search(String metric, String scope, Object key, String query,
+                                   int limit, String since) {
+        if(limit < 1) {
+            throw new BadLimitException(limit);
+        }
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        appendSearchQuery(config, scope, key, query, Math.min(limit, maxLimit), since, sql,
+                params);
+        return metrics.time(metric, () -> template.query(sql.toString(), params.toArray(),
+                (rs, rowNum) -> mapHit(rs)));
+    }
+
+    /**
+     * A forum's threads and posts, or a thread's posts when scope is "thread".
+     */
+    static void appendSearchQuery(String config, String scope, Object key, String query,
+                                  int limit, String since, StringBuilder sql,
+                                  List<Object> params) {
+        sql.append("WITH q AS (SELECT websearch_to_tsquery(?::REGCONFIG, ?) AS query) " +
+                "SELECT * FROM (");
+        params.add(config);
+        params.add(query);
+        if("forum".equals(scope)) {
+            sql.append(THREAD_HITS).append(" UNION ALL ");
+            params.add(key);
+        }
+        sql.append(POST_HITS).append("forum".equals(scope) ? FORUM_POSTS : THREAD_POSTS)
+                .append(") h");
+        params.add(key);
+        if(since != null) {
+            params.addAll(PageCursors.decode(since, "search", 3, cursor -> Arrays.asList(
+                    Float.parseFloat(cursor[0]), cursor[1], Long.parseLong(cursor[2]))));
+            sql.append(" WHERE (h.rank, h.type, h.id) < (?::REAL, ?, ?)");
+        }
+        sql.append(" ORDER BY h.rank DESC, h.type DESC, h.id DESC LIMIT ?");
+        params.add(limit);
+    }
+
+    private static SearchHit mapHit(ResultSet rs) throws SQLException {
+        SearchHit hit = new SearchHit();
+        hit.setType(rs.getString("type"));
+        hit.setRank(rs.getFloat("rank"));
+        hit.setCursor(PageCursors.encode("search", hit.getRank(), hit.getType(),
+                rs.getLong("id")));
+        if("thread".equals(hit.getType())) {
+            Thread thread = new Thread();
+            thread.setId(rs.getInt("id"));
+            thread.setAuthor(rs.getString("author"));
+            thread.setCreated(formatCreated(rs.getTimestamp("created")));
+            thread.setForum(rs.getString("forum"));
+            thread.setMessage(rs.getString("message"));
+            thread.setSlug(rs.getString("slug"));
+            thread.setTitle(rs.getString("title"));
+            thread.setVotes(rs.getInt("votes"));
+            hit.setThread(thread);
+        } else {
+            Post post = new Post();
+            post.setId(rs.getLong("id"));
+            post.setAuthor(rs.getString("author"));
+            post.setCreated(formatCreated(rs.getTimestamp("created")));
+            post.setForum(rs.getString("forum"));
+            post.setMessage(rs.getString("message"));
+            post.setEdited(rs.getBoolean("is_edited"));
+            post.setParent(rs.getLong("parent"));
+            post.setThread(rs.getInt("thread"));
+            hit.setPost(post);
+        }
+        return hit;
+    }
+
+    public static class BadLimitException extends RuntimeException {
+        public BadLimitException(int limit) {
+            super(String.format("Can't return %d hits, limit must be positive", limit));
+        }
+    }
+}
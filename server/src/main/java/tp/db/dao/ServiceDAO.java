@@ -0,0 +1,89 @@
+package tp.db.dao;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tp.db.metrics.Metrics;
+import tp.db.models.CacheStats;
+import tp.db.models.PoolStatus;
+import tp.db.models.ReplicaStatus;
+import tp.db.models.Status;
+import tp.db.pool.PoolMetrics;
+import tp.db.pool.ReadRoutingDataSource;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+@Transactional
+public class ServiceDAO {
+    private JdbcTemplate template;
+    private Metrics metrics;
+    private UserCache userCache;
+    private ForumCache forumCache;
+    private ThreadCache threadCache;
+    private HikariDataSource dataSource;
+    private PoolMetrics poolMetrics;
+    private StatusCounters counters;
+    private ReadRoutingDataSource routingDataSource;
+    private EntityVersions versions;
+
+    public ServiceDAO(JdbcTemplate template, Metrics metrics, UserCache userCache,
+                      ForumCache forumCache, ThreadCache threadCache,
+                      HikariDataSource dataSource, PoolMetrics poolMetrics,
+                      StatusCounters counters, ReadRoutingDataSource routingDataSource,
+                      EntityVersions versions) {
+        this.template = template;
+        this.metrics = metrics;
+        this.userCache = userCache;
+        this.forumCache = forumCache;
+        this.threadCache = threadCache;
+        this.dataSource = dataSource;
+        this.poolMetrics = poolMetrics;
+        this.counters = counters;
+        this.routingDataSource = routingDataSource;
+        this.versions = versions;
+    }
+
+    public Status getStatus() {
+        return counters.status();
+    }
+
+    public Map<String, CacheStats> getCacheStats() {
+        Map<String, CacheStats> result = new LinkedHashMap<>();
+        result.put("users", userCache.stats());
+        result.put("forums", forumCache.stats());
+        result.put("threads", threadCache.stats());
+        return result;
+    }
+
+    public PoolStatus getPoolStatus() {
+        return poolMetrics.status(dataSource.getMaximumPoolSize());
+    }
+
+    public List<ReplicaStatus> getReplicaStatus() {
+        return routingDataSource.status();
+    }
+
+    public void clear() {
+        metrics.run("ServiceDAO.clear.truncate", () -> template.execute(
+                "TRUNCATE users,forum,thread,post,post_ids,vote,forum_users,forum_counters," +
+                "status_counters"));
+        // Cleared once the truncate is visible, so that a lookup cannot refill them with rows
+        // read before it.
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        userCache.clear();
+                        forumCache.clear();
+                        threadCache.clear();
+                    }
+                });
+        versions.clear();
+    }
+}
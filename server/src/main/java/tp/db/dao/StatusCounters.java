@@ -0,0 +1,67 @@
+package tp.db.dao;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import tp.db.metrics.Metrics;
+import tp.db.models.Status;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Row counts of users, forums, threads and posts, kept in status_counters by the
+ * transactions that create the rows, so every instance reports the same counts and a clear
+ * resets them with its truncate.
+ *
+ * Like forum_counters they are spread over shard rows that are summed on read, so
+ * concurrent writers lock different rows. A shard row stays locked until commit: call after
+ * the transaction's other writes and before the forum counters, which are locked last.
+ */
+@Component
+public class StatusCounters {
+    private final JdbcTemplate template;
+    private final Metrics metrics;
+    private final int shards;
+
+    public StatusCounters(JdbcTemplate template, Metrics metrics,
+                          @Value("${db.status-counters.shards:16}") int shards) {
+        this.template = template;
+        this.metrics = metrics;
+        this.shards = shards;
+    }
+
+    public void addUsers(int delta) {
+        add(delta, 0, 0, 0);
+    }
+
+    public void addForums(int delta) {
+        add(0, delta, 0, 0);
+    }
+
+    public void addThreads(int delta) {
+        add(0, 0, delta, 0);
+    }
+
+    public void addPosts(long delta) {
+        add(0, 0, 0, delta);
+    }
+
+    private void add(int users, int forums, int threads, long posts) {
+        int shard = ThreadLocalRandom.current().nextInt(shards);
+        metrics.run("StatusCounters.add", () -> template.update("INSERT INTO " +
+                "status_counters(shard, users, forums, threads, posts) VALUES (?, ?, ?, ?, ?) " +
+                "ON CONFLICT (shard) DO UPDATE SET users = status_counters.users + " +
+                "EXCLUDED.users, forums = status_counters.forums + EXCLUDED.forums, " +
+                "threads = status_counters.threads + EXCLUDED.threads, " +
+                "posts = status_counters.posts + EXCLUDED.posts",
+                shard, users, forums, threads, posts));
+    }
+
+    public Status status() {
+        return metrics.time("StatusCounters.status", () -> template.queryForObject(
+                "SELECT COALESCE (SUM(forums), 0) AS forums, COALESCE (SUM(posts), 0) AS posts, " +
+                "COALESCE (SUM(threads), 0) AS threads, COALESCE (SUM(users), 0) AS users " +
+                "FROM status_counters", (rs, rowNum) -> new Status(rs.getInt("forums"),
+                rs.getLong("posts"), rs.getInt("threads"), rs.getInt("users"))));
+    }
+}
@@ -0,0 +1,150 @@
+package tp.db.dao;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tp.db.models.CacheStats;
+import tp.db.models.Thread;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Identity fields of threads (id, slug, author, forum, created), which never change once a
+ * thread exists. Entries live in a fixed table of slots indexed by id, so the cache holds at
+ * most db.cache.threads.size threads and a thread evicts the one whose slot it shares. Slugs
+ * find their entries through a second table indexed by the slug's case-folded hash.
+ *
+ * Every entry carries the generation the cache was in when its row was read, and a clear
+ * starts a new one: an entry read before the clear is ignored even if it is published after.
+ */
+@Component
+public class ThreadCache {
+    private final AtomicReferenceArray<Entry> ids;
+    private final AtomicReferenceArray<Entry> slugs;
+    private final int mask;
+    private volatile long generation;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ThreadCache(@Value("${db.cache.threads.size:100000}") int size) {
+        int slots = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        this.ids = new AtomicReferenceArray<>(slots);
+        this.slugs = new AtomicReferenceArray<>(slots);
+        this.mask = slots - 1;
+    }
+
+    private static class Entry {
+        private final int id;
+        private final String slug;
+        private final String author;
+        private final String forum;
+        private final String created;
+        private final long generation;
+
+        private Entry(Thread thread, long generation) {
+            id = thread.getId();
+            slug = thread.getSlug();
+            author = thread.getAuthor();
+            forum = thread.getForum();
+            created = thread.getCreated();
+            this.generation = generation;
+        }
+
+        private Thread toThread() {
+            Thread thread = new Thread();
+            thread.setId(id);
+            thread.setSlug(slug);
+            thread.setAuthor(author);
+            thread.setForum(forum);
+            thread.setCreated(created);
+            return thread;
+        }
+    }
+
+    private static String key(String slug) {
+        return slug.toLowerCase(Locale.ROOT);
+    }
+
+    private int slot(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public Thread get(int id) {
+        Entry entry = ids.get(id & mask);
+        return found(entry != null && entry.id == id ? entry : null);
+    }
+
+    public Thread get(String slug) {
+        String key = key(slug);
+        Entry entry = slugs.get(slot(key));
+        return found(entry != null && key.equals(key(entry.slug)) ? entry : null);
+    }
+
+    private Thread found(Entry entry) {
+        if (entry == null || entry.generation != generation) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.toThread();
+    }
+
+    /**
+     * Must be taken before the thread row is read.
+     */
+    public long stamp() {
+        return generation;
+    }
+
+    /**
+     * Inside a transaction the entry is only published once the transaction commits.
+     */
+    public void put(Thread thread, long stamp) {
+        if (thread.getId() <= 0) {
+            return;
+        }
+        final Entry entry = new Entry(thread, stamp);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronizationAdapter() {
+                        @Override
+                        public void afterCommit() {
+                            publish(entry);
+                        }
+                    });
+        } else {
+            publish(entry);
+        }
+    }
+
+    private void publish(Entry entry) {
+        ids.set(entry.id & mask, entry);
+        if (entry.slug != null) {
+            slugs.set(slot(key(entry.slug)), entry);
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        for (int i = 0; i <= mask; i++) {
+            ids.set(i, null);
+            slugs.set(i, null);
+        }
+    }
+
+    public CacheStats stats() {
+        long current = generation;
+        long size = 0;
+        for (int i = 0; i <= mask; i++) {
+            Entry entry = ids.get(i);
+            if (entry != null && entry.generation == current) {
+                size++;
+            }
+        }
+        return new CacheStats(hits.sum(), misses.sum(), size);
+    }
+}
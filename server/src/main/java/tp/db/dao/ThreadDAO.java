@@ -0,0 +1,372 @@
+package tp.db.dao;
+
+import org.postgresql.util.PSQLException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import tp.db.metrics.Metrics;
+import tp.db.models.*;
+import tp.db.models.Thread;
+
+@Service
+@Transactional
+public class ThreadDAO {
+    private static final String COLUMNS = "t.id, t.slug, t.title, t.author, t.forum, t.message, " +
+            "t.created, t.votes";
+    static final String SELECT_BY_ID = "SELECT " + COLUMNS + " FROM thread t WHERE id = ?";
+    static final String SELECT_BY_SLUG = "SELECT " + COLUMNS + " FROM thread t WHERE " +
+            "lower(slug) = lower(?)";
+    static final String SELECT_BY_IDS = "SELECT " + COLUMNS + " FROM thread t WHERE " +
+            "id = ANY (?)";
+    static final String SELECT_BY_SLUGS = "SELECT n.requested, " + COLUMNS + " FROM " +
+            "unnest(?::TEXT[]) AS n(requested) JOIN thread t ON lower(t.slug) = lower(n.requested)";
+    static final String VOTE = "WITH old AS (SELECT voice FROM vote WHERE nickname = ? AND " +
+            "thread = ? FOR UPDATE), ups AS (INSERT INTO vote(nickname, voice, thread) VALUES " +
+            "(?, ?, ?) ON CONFLICT (nickname, thread) DO UPDATE SET voice = EXCLUDED.voice " +
+            "WHERE vote.voice = (SELECT voice FROM old) RETURNING voice) UPDATE thread t SET " +
+            "votes = votes + (SELECT voice FROM ups) - COALESCE((SELECT voice FROM old), 0) " +
+            "WHERE id = ? AND EXISTS (SELECT 1 FROM ups) RETURNING " + COLUMNS;
+    private static final int VOTE_ATTEMPTS = 3;
+    private static final String FOREIGN_KEY_VIOLATION = "23503";
+
+    private final JdbcTemplate template;
+    private final Metrics metrics;
+    private final UserDAO userDAO;
+    private final ForumDAO forumDAO;
+    private final ThreadCache cache;
+    private final StatusCounters counters;
+    private final EntityVersions versions;
+    private final Coalescer<Integer, Thread> idLookups;
+    private final Coalescer<String, Thread> slugLookups;
+
+    public ThreadDAO(JdbcTemplate template, Metrics metrics, UserDAO userDAO, ForumDAO forumDAO,
+                     ThreadCache cache, StatusCounters counters, EntityVersions versions,
+                     Coalescers coalescers) {
+        this.template = template;
+        this.metrics = metrics;
+        this.userDAO = userDAO;
+        this.forumDAO = forumDAO;
+        this.cache = cache;
+        this.counters = counters;
+        this.versions = versions;
+        this.idLookups = coalescers.create(this::selectThreadById, this::selectThreadsById);
+        this.slugLookups = coalescers.create(this::selectThreadBySlug,
+                this::selectThreadsBySlug);
+    }
+
+    private static String formatCreated(Timestamp created) {
+        return LocalDateTime.ofInstant(created.toInstant(), ZoneOffset.ofHours(0))
+                .format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'"));
+    }
+
+    public static class ThreadRowMapper implements RowMapper<Thread>
+    {
+        public Thread mapRow(ResultSet rs, int rowNum) throws SQLException {
+            Thread thread = new Thread();
+            thread.setAuthor(rs.getString("author"));
+            thread.setCreated(formatCreated(rs.getTimestamp("created")));
+            thread.setForum(rs.getString("forum"));
+            thread.setMessage(rs.getString("message"));
+            thread.setSlug(rs.getString("slug"));
+            thread.setTitle(rs.getString("title"));
+            thread.setVotes(rs.getInt("votes"));
+            thread.setId(rs.getInt("id"));
+            return thread;
+        }
+    }
+
+    public Thread createThread(final String forumSlug, final Thread thread) {
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        long stamp = cache.stamp();
+        try {
+            User user = userDAO.getUserByNickname(thread.getAuthor());
+            if(user == null) {
+                throw new UserDAO.NoSuchUserException(thread.getAuthor());
+            }
+            Forum forum = forumDAO.getForumBySlug(forumSlug);
+            if(forum == null) {
+                throw new ForumDAO.NoSuchForumException(forumSlug);
+            }
+            thread.setAuthor(user.getNickname());
+            thread.setForum(forum.getSlug());
+            metrics.run("ThreadDAO.createThread.insert", () -> template.update(con -> {
+                PreparedStatement pst = con.prepareStatement(
+                        "INSERT INTO thread(author, forum, created, message, title, slug, " +
+                                "search) VALUES (?, ?, COALESCE(?::TIMESTAMPTZ, " +
+                                "CURRENT_TIMESTAMP), ?, ?, ?, search_vector(?, ?)) " +
+                                "returning id, created;",
+                        PreparedStatement.RETURN_GENERATED_KEYS);
+
+                pst.setString(1, thread.getAuthor());
+                pst.setString(2, thread.getForum());
+                pst.setString(3, thread.getCreated());
+                pst.setString(4, thread.getMessage());
+                pst.setString(5, thread.getTitle());
+                pst.setString(6, thread.getSlug());
+                pst.setString(7, thread.getTitle());
+                pst.setString(8, thread.getMessage());
+                return pst;
+            }, keyHolder));
+            thread.setId(((Number) keyHolder.getKeys().get("id")).intValue());
+
+            Thread identity = new Thread();
+            identity.setId(thread.getId());
+            identity.setSlug(thread.getSlug());
+            identity.setAuthor(thread.getAuthor());
+            identity.setForum(thread.getForum());
+            identity.setCreated(formatCreated((Timestamp) keyHolder.getKeys().get("created")));
+            cache.put(identity, stamp);
+            versions.threadChanged(identity);
+            userDAO.addForumUsers(thread.getForum(), Collections.singletonList(thread.getAuthor()));
+
+            counters.addThreads(1);
+            forumDAO.addThreads(thread.getForum(), 1);
+
+            return thread;
+        } catch (UserDAO.NoSuchUserException | ForumDAO.NoSuchForumException |
+                DuplicateKeyException ex) {
+            throw ex;
+        }
+    }
+
+    private static String threadsListing(Boolean desc) {
+        return desc ? "threads.desc" : "threads.asc";
+    }
+
+    /**
+     * A cursor carries the (created, id) of the last thread, ties on created included, and
+     * takes the place of since.
+     */
+    static void appendThreadsQuery(String slug, Integer limit, String since, String cursor,
+                                   Boolean desc, StringBuilder sql, List<Object> params) {
+        sql.append("SELECT " + COLUMNS + " FROM thread t WHERE t.forum = " +
+                "(SELECT slug FROM forum WHERE LOWER (slug) = LOWER (?))");
+        params.add(slug);
+        if(cursor != null) {
+            params.addAll(PageCursors.decode(cursor, threadsListing(desc), 2, key ->
+                    Arrays.asList(Instant.parse(key[0]).toString(), Integer.parseInt(key[1]))));
+            if(desc) {
+                sql.append(" AND (t.created, t.id) < (?::TIMESTAMPTZ, ?)");
+            } else {
+                sql.append(" AND (t.created, t.id) > (?::TIMESTAMPTZ, ?)");
+            }
+        } else if(since != null) {
+            params.add(since);
+            if(desc) {
+                sql.append(" AND t.created <= ?::TIMESTAMPTZ");
+            } else {
+                sql.append(" AND t.created >= ?::TIMESTAMPTZ");
+            }
+        }
+        if(desc) {
+            sql.append(" ORDER BY t.created DESC, t.id DESC");
+        } else {
+            sql.append(" ORDER BY t.created ASC, t.id ASC");
+        }
+        if(limit != null) {
+            params.add(limit);
+            sql.append(" LIMIT ?");
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public Page<Thread> getThreadsByForumSlug(String slug, Integer limit, String since,
+                                              String cursor, Boolean desc) {
+        final StringBuilder sql = new StringBuilder();
+        ArrayList<Object> params = new ArrayList<>();
+        appendThreadsQuery(slug, limit, since, cursor, desc, sql, params);
+
+        ThreadRowMapper mapper = new ThreadRowMapper();
+        Object[] last = new Object[2];
+        List<Thread> result = metrics.time("ThreadDAO.getThreadsByForumSlug.select",
+                () -> template.query(sql.toString(), params.toArray(), (rs, rowNum) -> {
+            last[0] = rs.getTimestamp("created").toInstant();
+            last[1] = rs.getInt("id");
+            return mapper.mapRow(rs, rowNum);
+        }));
+        if (result.isEmpty()) {
+            return null;
+        }
+        String next = null;
+        if(limit != null && result.size() == limit) {
+            next = PageCursors.encode(threadsListing(desc), last);
+        }
+        return new Page<>(result, next);
+    }
+
+    @Transactional(readOnly = true)
+    public Thread getThreadBySlugOrId(String slugOrId) {
+        Integer id = null;
+        try {
+            id = Integer.parseInt(slugOrId);
+        } catch (NumberFormatException ex) {}
+
+        long stamp = cache.stamp();
+        Thread thread = (id == null ? slugLookups.get(slugOrId) : idLookups.get(id));
+        if(thread == null) {
+            return null;
+        }
+        cache.put(thread, stamp);
+        return thread;
+    }
+
+    private Thread selectThreadById(Integer id) {
+        return selectThread(SELECT_BY_ID, id);
+    }
+
+    private Thread selectThreadBySlug(String slug) {
+        return selectThread(SELECT_BY_SLUG, slug);
+    }
+
+    private Thread selectThread(String sql, Object param) {
+        List<Thread> result = metrics.time("ThreadDAO.getThreadBySlugOrId.select",
+                () -> template.query(sql, new Object[]{param}, new ThreadRowMapper()));
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    private Map<Integer, Thread> selectThreadsById(final List<Integer> ids) {
+        Map<Integer, Thread> result = new HashMap<>();
+        ThreadRowMapper mapper = new ThreadRowMapper();
+        metrics.run("ThreadDAO.getThreadBySlugOrId.batch", () -> template.query(con -> {
+            PreparedStatement pst = con.prepareStatement(SELECT_BY_IDS);
+            pst.setArray(1, con.createArrayOf("int4", ids.toArray()));
+            return pst;
+        }, rs -> {
+            Thread thread = mapper.mapRow(rs, 0);
+            result.put(thread.getId(), thread);
+        }));
+        return result;
+    }
+
+    private Map<String, Thread> selectThreadsBySlug(final List<String> slugs) {
+        Map<String, Thread> result = new HashMap<>();
+        ThreadRowMapper mapper = new ThreadRowMapper();
+        metrics.run("ThreadDAO.getThreadBySlugOrId.batch", () -> template.query(con -> {
+            PreparedStatement pst = con.prepareStatement(SELECT_BY_SLUGS);
+            pst.setArray(1, con.createArrayOf("text", slugs.toArray()));
+            return pst;
+        }, rs -> {
+            result.put(rs.getString("requested"), mapper.mapRow(rs, 0));
+        }));
+        return result;
+    }
+
+    @Transactional(readOnly = true)
+    public Thread getThreadIdentity(String slugOrId) {
+        Integer id = null;
+        try {
+            id = Integer.parseInt(slugOrId);
+        } catch (NumberFormatException ex) {}
+
+        Thread cached = (id == null ? cache.get(slugOrId) : cache.get(id));
+        if(cached != null) {
+            return cached;
+        }
+        return getThreadBySlugOrId(slugOrId);
+    }
+
+    public Thread voteThread(String slugOrId, Vote vote) {
+        Thread thread = getThreadIdentity(slugOrId);
+        if(thread == null) {
+            return thread;
+        }
+
+        long stamp = cache.stamp();
+        // The upsert only overwrites the vote it read, so a concurrent first vote by the same
+        // user turns this statement into a no-op and it is retried on a new snapshot.
+        for (int attempt = 0; attempt < VOTE_ATTEMPTS; attempt++) {
+            List<Thread> result;
+            try {
+                result = metrics.time("ThreadDAO.voteThread.vote", () -> template.query(con -> {
+                    PreparedStatement pst = con.prepareStatement(VOTE);
+                    pst.setString(1, vote.getNickname());
+                    pst.setInt(2, thread.getId());
+                    pst.setString(3, vote.getNickname());
+                    pst.setInt(4, vote.getVoice());
+                    pst.setInt(5, thread.getId());
+                    pst.setInt(6, thread.getId());
+                    return pst;
+                }, new ThreadRowMapper()));
+            } catch (DataIntegrityViolationException ex) {
+                if(ex.getCause() instanceof PSQLException && FOREIGN_KEY_VIOLATION.equals(
+                        ((PSQLException) ex.getCause()).getSQLState())) {
+                    throw new UserDAO.NoSuchUserException(vote.getNickname());
+                }
+                throw ex;
+            }
+            if(!result.isEmpty()) {
+                cache.put(result.get(0), stamp);
+                versions.threadChanged(result.get(0));
+                return result.get(0);
+            }
+        }
+        throw new VoteConflictException(vote.getNickname(), slugOrId);
+    }
+
+    public Thread updateThread(String slugOrId, ThreadUpdate threadUpdate) {
+        Integer id = null;
+        StringBuilder sql = new StringBuilder();
+        ArrayList<Object> params = new ArrayList<>();
+        sql.append("UPDATE thread t SET title = COALESCE (?, title), message = " +
+                "COALESCE (?, message), search = search_vector(COALESCE (?, title), " +
+                "COALESCE (?, message)) WHERE ");
+        try {
+            id = Integer.parseInt(slugOrId);
+        } catch (NumberFormatException ex) {}
+        params.add(threadUpdate.getTitle());
+        params.add(threadUpdate.getMessage());
+        params.add(threadUpdate.getTitle());
+        params.add(threadUpdate.getMessage());
+
+        if(id == null) {
+            params.add(slugOrId);
+            sql.append("lower(slug) = lower(?)");
+        } else {
+            params.add(id);
+            sql.append("id = ?");
+        }
+        sql.append(" RETURNING ").append(COLUMNS);
+
+        long stamp = cache.stamp();
+        List<Thread> result = metrics.time("ThreadDAO.updateThread.update",
+                () -> template.query(sql.toString(), params.toArray(), new ThreadRowMapper()));
+        if(result.isEmpty())
+            throw new NoSuchThreadException(slugOrId);
+        cache.put(result.get(0), stamp);
+        versions.threadChanged(result.get(0));
+        return result.get(0);
+    }
+
+    public static class VoteConflictException extends RuntimeException {
+        public VoteConflictException(String nickname, String slugOrId) {
+            super(String.format("Vote of user %s on thread %s keeps conflicting with " +
+                    "concurrent votes", nickname, slugOrId));
+        }
+    }
+
+    public static class NoSuchThreadException extends RuntimeException {
+        public NoSuchThreadException(String slug) {
+            super(String.format("Can't find thread with id or slug %s", slug));
+        }
+    }
+}
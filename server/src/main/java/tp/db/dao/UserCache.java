@@ -0,0 +1,73 @@
+package tp.db.dao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tp.db.models.CacheStats;
+import tp.db.models.User;
+
+import java.util.Locale;
+
+/**
+ * Bounded cache of user profiles keyed by lower-cased nickname, so that lookups with any
+ * letter case share one entry. Only existing users are cached, and a profile read before a
+ * change to it committed, or while one is in flight, is never cached.
+ */
+@Component
+public class UserCache {
+    private final Cache<String, User> cache;
+    private final WriteGuard guard = new WriteGuard();
+
+    public UserCache(@Value("${db.cache.users.size:100000}") long size) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(size)
+                .recordStats()
+                .build();
+    }
+
+    private static String key(String nickname) {
+        return nickname.toLowerCase(Locale.ROOT);
+    }
+
+    public User get(String nickname) {
+        return cache.getIfPresent(key(nickname));
+    }
+
+    /**
+     * Must be taken before the user row is read; returns -1 while a change to it is in flight.
+     */
+    public long stamp(String nickname) {
+        return guard.stamp(key(nickname));
+    }
+
+    public void put(User user, long stamp) {
+        String key = key(user.getNickname());
+        cache.asMap().compute(key, (k, cached) -> {
+            if (cached != null) {
+                return cached;
+            }
+            return guard.unchanged(key, stamp) ? user : null;
+        });
+    }
+
+    /**
+     * Announces a change to the user's row in the current transaction before it is made; the
+     * cached profile is dropped once the change commits.
+     */
+    public void changed(String nickname) {
+        String key = key(nickname);
+        guard.begin(key, () -> cache.invalidate(key));
+    }
+
+    public void clear() {
+        guard.clear();
+        cache.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        com.github.benmanes.caffeine.cache.stats.CacheStats stats = cache.stats();
+        return new CacheStats(stats.hitCount(), stats.missCount(),
+                cache.estimatedSize());
+    }
+}
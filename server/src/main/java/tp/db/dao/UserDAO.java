@@ -0,0 +1,284 @@
+package tp.db.dao;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tp.db.metrics.Metrics;
+import tp.db.models.Page;
+import tp.db.models.User;
+import tp.db.models.UserUpdate;
+import tp.db.pool.ReadRouting;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+@Transactional
+public class UserDAO {
+    static final String SELECT_BY_NICKNAME = "SELECT * FROM users WHERE " +
+            "LOWER (nickname) = LOWER (?)";
+    static final String SELECT_BY_NICKNAMES = "SELECT n.requested, u.* FROM " +
+            "unnest(?::TEXT[]) AS n(requested) JOIN users u ON " +
+            "LOWER (u.nickname) = LOWER (n.requested)";
+
+    private final JdbcTemplate template;
+    private final Metrics metrics;
+    private final UserCache cache;
+    private final StatusCounters counters;
+    private final ReadRouting routing;
+    private final EntityVersions versions;
+    private final Coalescer<String, User> lookups;
+
+    public UserDAO(JdbcTemplate template, Metrics metrics, UserCache cache,
+                   StatusCounters counters, ReadRouting routing, EntityVersions versions,
+                   Coalescers coalescers) {
+        this.template = template;
+        this.metrics = metrics;
+        this.cache = cache;
+        this.counters = counters;
+        this.routing = routing;
+        this.versions = versions;
+        this.lookups = coalescers.create(this::selectUser, this::selectUsers);
+    }
+
+    public static class UserRowMapper implements RowMapper<User>
+    {
+        public User mapRow(ResultSet rs, int rowNum) throws SQLException {
+            User user = new User();
+            user.setNickname(rs.getString("nickname"));
+            user.setFullname(rs.getString("fullname"));
+            user.setAbout(rs.getString("about"));
+            user.setEmail(rs.getString("email"));
+            return user;
+        }
+
+    }
+
+    public User createUser(final User user) {
+        try {
+            long stamp = cache.stamp(user.getNickname());
+            metrics.run("UserDAO.createUser.insert", () -> template.update(con -> {
+                PreparedStatement pst = con.prepareStatement(
+                        "INSERT INTO users(nickname, fullname, email, about) " +
+                                "VALUES (?, ?, ?, ?)");
+                pst.setString(1, user.getNickname());
+                pst.setString(2, user.getFullname());
+                pst.setString(3, user.getEmail());
+                pst.setObject(4, user.getAbout());
+                return pst;
+            }));
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronizationAdapter() {
+                        @Override
+                        public void afterCommit() {
+                            cache.put(user, stamp);
+                        }
+                    });
+            counters.addUsers(1);
+            versions.userChanged(user.getNickname());
+            return user;
+        } catch (DuplicateKeyException ex) {
+            return null;
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<User> getUsersByNickOrEmail(final String nickname, final String email) {
+        List<User> result = metrics.time("UserDAO.getUsersByNickOrEmail.select",
+                () -> template.query(connection -> {
+            PreparedStatement pst = connection.prepareStatement("SELECT * FROM users WHERE " +
+                    "LOWER (nickname) = LOWER (?) OR LOWER (email) = LOWER (?)");
+            pst.setString(1, nickname);
+            pst.setString(2, email);
+            return pst;
+            }, new UserRowMapper()));
+        if (result.isEmpty()) {
+            return null;
+        }
+        return result;
+    }
+
+    @Transactional(readOnly = true)
+    public User getUserByNickname(final String nickname) {
+        if (nickname == null) {
+            return null;
+        }
+        User cached = cache.get(nickname);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = cache.stamp(nickname);
+        User user = lookups.get(nickname);
+        if (user != null && !routing.readsReplica()) {
+            cache.put(user, stamp);
+        }
+        return user;
+    }
+
+    private User selectUser(final String nickname) {
+        List<User> result = metrics.time("UserDAO.getUserByNickname.select",
+                () -> template.query(connection -> {
+            PreparedStatement pst = connection.prepareStatement(SELECT_BY_NICKNAME);
+            pst.setString(1, nickname);
+            return pst;
+        }, new UserRowMapper()));
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    private Map<String, User> selectUsers(final List<String> nicknames) {
+        Map<String, User> result = new HashMap<>();
+        UserRowMapper mapper = new UserRowMapper();
+        metrics.run("UserDAO.getUserByNickname.batch", () -> template.query(con -> {
+            PreparedStatement pst = con.prepareStatement(SELECT_BY_NICKNAMES);
+            pst.setArray(1, con.createArrayOf("text", nicknames.toArray()));
+            return pst;
+        }, rs -> {
+            result.put(rs.getString("requested"), mapper.mapRow(rs, 0));
+        }));
+        return result;
+    }
+
+    public Map<String, String> getNicknames(final Collection<String> nicknames) {
+        Map<String, String> result = new HashMap<>();
+        final List<String> missing = new ArrayList<>();
+        for (String nickname : nicknames) {
+            if (nickname == null) {
+                continue;
+            }
+            User cached = cache.get(nickname);
+            if (cached != null) {
+                result.put(nickname, cached.getNickname());
+            } else {
+                missing.add(nickname);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        Map<String, Long> stamps = new HashMap<>();
+        for (String nickname : missing) {
+            stamps.put(nickname, cache.stamp(nickname));
+        }
+        UserRowMapper mapper = new UserRowMapper();
+        metrics.run("UserDAO.getNicknames.select", () -> template.query(con -> {
+            PreparedStatement pst = con.prepareStatement(SELECT_BY_NICKNAMES);
+            pst.setArray(1, con.createArrayOf("text", missing.toArray()));
+            return pst;
+        }, rs -> {
+            User user = mapper.mapRow(rs, 0);
+            cache.put(user, stamps.get(rs.getString("requested")));
+            result.put(rs.getString("requested"), user.getNickname());
+        }));
+        return result;
+    }
+
+    public User updateUser(final String nickname, final UserUpdate userUpdate)
+            throws NoSuchUserException {
+        cache.changed(nickname);
+        int affectedRows = metrics.time("UserDAO.updateUser.update", () -> template.update(con -> {
+            PreparedStatement pst = con.prepareStatement("UPDATE users SET about = " +
+                    "COALESCE (?, about), fullname = COALESCE (?, fullname), email = " +
+                    "COALESCE (?, email) WHERE LOWER (nickname) = LOWER (?)");
+            pst.setString(1, userUpdate.getAbout());
+            pst.setString(2, userUpdate.getFullname());
+            pst.setString(3, userUpdate.getEmail());
+            pst.setString(4, nickname);
+            return pst;
+        }));
+        if(affectedRows == 0)
+            throw new NoSuchUserException(nickname);
+        versions.userChanged(nickname);
+        metrics.run("UserDAO.updateUser.forumUsers", () -> template.update(con -> {
+            PreparedStatement pst = con.prepareStatement("UPDATE forum_users fu SET fullname = " +
+                    "u.fullname, email = u.email, about = u.about FROM users u WHERE " +
+                    "LOWER (u.nickname) = LOWER (?) AND fu.nickname = u.nickname");
+            pst.setString(1, nickname);
+            return pst;
+        }));
+        // The cached profile stays until commit, so the changed row is read back directly.
+        return selectUser(nickname);
+    }
+
+    public void addForumUsers(final String forum, final Collection<String> nicknames) {
+        metrics.run("UserDAO.addForumUsers.insert", () -> template.update(con -> {
+            PreparedStatement pst = con.prepareStatement("INSERT INTO forum_users(forum, nickname, " +
+                    "fullname, email, about) SELECT ?, nickname, fullname, email, about FROM users " +
+                    "WHERE nickname = ANY (?) ORDER BY nickname ON CONFLICT DO NOTHING");
+            pst.setString(1, forum);
+            pst.setArray(2, con.createArrayOf("text", nicknames.toArray()));
+            return pst;
+        }));
+    }
+
+    private static String usersListing(Boolean desc) {
+        return desc ? "users.desc" : "users.asc";
+    }
+
+    /**
+     * Nicknames are unique regardless of case, so the one a cursor carries is the full sort
+     * key; it takes the place of since.
+     */
+    static void appendUsersQuery(String slug, Integer limit, String since, String cursor,
+                                 Boolean desc, StringBuilder sql, List<Object> params) {
+        sql.append("SELECT nickname, fullname, about, email FROM forum_users WHERE forum = " +
+                "(SELECT slug FROM forum WHERE LOWER (slug) = LOWER (?))");
+        params.add(slug);
+        if(cursor != null) {
+            since = PageCursors.decode(cursor, usersListing(desc), 1, key -> key[0]);
+        }
+        if(since != null) {
+            params.add(since);
+            if(desc) {
+                sql.append(" AND LOWER (nickname COLLATE \"ucs_basic\") < LOWER (? " +
+                        "COLLATE \"ucs_basic\")");
+            } else {
+                sql.append(" AND LOWER (nickname COLLATE \"ucs_basic\") > LOWER( ? " +
+                        "COLLATE \"ucs_basic\")");
+            }
+        }
+        if(desc) {
+            sql.append(" ORDER BY LOWER (nickname COLLATE \"ucs_basic\") DESC");
+        } else {
+            sql.append(" ORDER BY LOWER (nickname COLLATE \"ucs_basic\") ASC");
+        }
+        if(limit != null) {
+            params.add(limit);
+            sql.append(" LIMIT ?");
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public Page<User> getUsersByForumSlug(String slug, Integer limit, String since, String cursor,
+                                          Boolean desc) {
+        final StringBuilder sql = new StringBuilder();
+        ArrayList<Object> params = new ArrayList<>();
+        appendUsersQuery(slug, limit, since, cursor, desc, sql, params);
+        List<User> result = metrics.time("UserDAO.getUsersByForumSlug.select",
+                () -> template.query(sql.toString(), params.toArray(), new UserRowMapper()));
+        if (result.isEmpty()) {
+            return null;
+        }
+        String next = null;
+        if(limit != null && result.size() == limit) {
+            next = PageCursors.encode(usersListing(desc),
+                    result.get(result.size() - 1).getNickname());
+        }
+        return new Page<>(result, next);
+    }
+
+    public static class NoSuchUserException extends RuntimeException {
+        public NoSuchUserException(String nickname) {
+            super(String.format("Can't find user with nickname %s", nickname));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package tp.db.dao;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tells a cache whether a row it read may be older than a committed or in-flight write, so
+ * that it is not cached. A reader takes a stamp before it queries and may fill the cache only
+ * if no write to the key started since and none is still in flight.
+ *
+ * Keys hash into a fixed set of stripes, so lookups of keys that were never written cost no
+ * memory; two keys sharing a stripe only make each other's fills fail more often.
+ */
+final class WriteGuard {
+    private static final int STRIPES = 1 << 12;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLongArray started = new AtomicLongArray(STRIPES);
+    private final AtomicIntegerArray pending = new AtomicIntegerArray(STRIPES);
+    private volatile long floor;
+
+    /**
+     * Must be taken before the row is read; returns -1 while a write to the key is in flight.
+     */
+    long stamp(String key) {
+        long stamp = sequence.get();
+        return pending.get(index(key)) == 0 ? stamp : -1;
+    }
+
+    /**
+     * Whether a row read after taking the stamp is still current. Callers check this
+     * atomically with the fill, under the lock of the cache entry that onCommit updates.
+     */
+    boolean unchanged(String key, long stamp) {
+        int index = index(key);
+        return stamp >= floor && pending.get(index) == 0 && started.get(index) <= stamp;
+    }
+
+    /**
+     * Announces a write to the key in the current transaction before it is made. onCommit
+     * runs in afterCommit, while the write still counts as in flight; it is released once the
+     * transaction completes either way.
+     */
+    void begin(String key, Runnable onCommit) {
+        Assert.state(TransactionSynchronizationManager.isSynchronizationActive(),
+                "Cached rows can only change inside a transaction");
+        final int index = index(key);
+        pending.incrementAndGet(index);
+        started.accumulateAndGet(index, sequence.incrementAndGet(), Math::max);
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        onCommit.run();
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        pending.decrementAndGet(index);
+                    }
+                });
+    }
+
+    /**
+     * Fails every fill whose stamp was taken before.
+     */
+    void clear() {
+        floor = sequence.incrementAndGet();
+    }
+
+    private static int index(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return h & (STRIPES - 1);
+    }
+}
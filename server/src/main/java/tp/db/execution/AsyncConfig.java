@@ -0,0 +1,48 @@
+package tp.db.execution;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streamed responses, the exports, are written by a small pool of their own rather than by
+ * the Tomcat worker that took the request, which goes back to serving the API as soon as the
+ * headers are decided. Each running export holds a connection until its last row is out, so
+ * at most db.export.threads run at once and up to db.export.queue-capacity wait their turn;
+ * further exports are turned away. One may take up to db.export.timeout-seconds.
+ */
+@Configuration
+public class AsyncConfig extends WebMvcConfigurerAdapter {
+    private final int threads;
+    private final int queueCapacity;
+    private final long timeoutSeconds;
+
+    public AsyncConfig(@Value("${db.export.threads:2}") int threads,
+                       @Value("${db.export.queue-capacity:8}") int queueCapacity,
+                       @Value("${db.export.timeout-seconds:3600}") long timeoutSeconds) {
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor exportExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("export-");
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(exportExecutor());
+        configurer.setDefaultTimeout(TimeUnit.SECONDS.toMillis(timeoutSeconds));
+    }
+}
@@ -0,0 +1,70 @@
+package tp.db.execution;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerCustomizer;
+import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainerFactory;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Enabled with db.execution.mode=virtual. Tomcat then runs every request on its own virtual
+ * thread instead of a worker from its fixed pool, and at most db.execution.max-concurrency
+ * requests (by default the connection pool size) are let through to the controllers at once,
+ * so the rest queue in front of the pool instead of timing out inside it.
+ *
+ * The build still targets Java 8, which Spring 4.3 requires, so the executor is looked up
+ * reflectively and this mode needs a Java 21+ runtime, which the image ships.
+ */
+@Configuration
+@ConditionalOnProperty(name = "db.execution.mode", havingValue = "virtual")
+public class VirtualThreadConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalStateException(String.format("db.execution.mode=virtual needs " +
+                    "Java 21 or newer, running on %s", System.getProperty("java.version")));
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new IllegalStateException("Can't create a virtual thread executor", ex);
+        }
+    }
+
+    @Bean
+    public EmbeddedServletContainerCustomizer virtualThreadConnector(ExecutorService requestExecutor) {
+        return container -> {
+            if (!(container instanceof TomcatEmbeddedServletContainerFactory)) {
+                throw new IllegalStateException("db.execution.mode=virtual needs Tomcat");
+            }
+            ((TomcatEmbeddedServletContainerFactory) container).addConnectorCustomizers(
+                    connector -> {
+                        ProtocolHandler handler = connector.getProtocolHandler();
+                        if (handler instanceof AbstractProtocol) {
+                            ((AbstractProtocol<?>) handler).setExecutor(requestExecutor);
+                        }
+                    });
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean concurrencyLimitFilter(
+            HikariDataSource dataSource,
+            @Value("${db.execution.max-concurrency:0}") int maxConcurrency) {
+        int permits = maxConcurrency > 0 ? maxConcurrency : dataSource.getMaximumPoolSize();
+        FilterRegistrationBean registration =
+                new FilterRegistrationBean(new ConcurrencyLimitFilter(permits));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+}
@@ -0,0 +1,92 @@
+package tp.db.metrics;
+
+import tp.db.models.LatencyStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram over fixed 1-2-5 buckets from 50us to 10s. Every bucket is a LongAdder,
+ * so recording never takes a lock and concurrent writers mostly touch different cells.
+ * Percentiles are reported as the upper bound of the bucket they fall into.
+ */
+public class Histogram {
+    static final long[] BOUNDS_MICROS = {50, 100, 200, 500, 1_000, 2_000, 5_000, 10_000, 20_000,
+            50_000, 100_000, 200_000, 500_000, 1_000_000, 2_000_000, 5_000_000, 10_000_000};
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_MICROS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder errors = new LongAdder();
+
+    public Histogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos, boolean error) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        int bucket = 0;
+        while (bucket < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        if (error) {
+            errors.increment();
+        }
+    }
+
+    long[] counts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    long sumNanos() {
+        return sumNanos.sum();
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+
+    public LatencyStats stats() {
+        long[] counts = counts();
+        long count = 0;
+        for (long c : counts) {
+            count += c;
+        }
+        long maxMicros = TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+
+        LatencyStats stats = new LatencyStats();
+        stats.setCount(count);
+        stats.setErrors(errors.sum());
+        stats.setMeanMicros(count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(sumNanos.sum() / count));
+        stats.setP50Micros(percentile(counts, count, 0.50, maxMicros));
+        stats.setP95Micros(percentile(counts, count, 0.95, maxMicros));
+        stats.setP99Micros(percentile(counts, count, 0.99, maxMicros));
+        stats.setMaxMicros(maxMicros);
+        return stats;
+    }
+
+    private static long percentile(long[] counts, long count, double quantile, long maxMicros) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i < BOUNDS_MICROS.length ? Math.min(BOUNDS_MICROS[i], maxMicros) : maxMicros;
+            }
+        }
+        return maxMicros;
+    }
+}
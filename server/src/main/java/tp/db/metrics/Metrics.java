@@ -0,0 +1,138 @@
+package tp.db.metrics;
+
+import org.springframework.stereotype.Component;
+import tp.db.models.LatencyStats;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Request latency per endpoint (method and path pattern) with counts per response status, and
+ * query latency per logical query name such as PostDAO.createPost.insert.
+ *
+ * Lookups try a plain get before computeIfAbsent, which on Java 8 locks the bin even when the
+ * key is already present; once a name has been seen, recording is lock-free.
+ */
+@Component
+public class Metrics {
+    private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> queries = new ConcurrentHashMap<>();
+
+    static class Endpoint {
+        final Histogram histogram = new Histogram();
+        final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        void record(int status, long nanos) {
+            histogram.record(nanos, status >= 400);
+            LongAdder count = statuses.get(status);
+            if (count == null) {
+                count = statuses.computeIfAbsent(status, s -> new LongAdder());
+            }
+            count.increment();
+        }
+    }
+
+    public void recordRequest(String endpoint, int status, long nanos) {
+        Endpoint e = endpoints.get(endpoint);
+        if (e == null) {
+            e = endpoints.computeIfAbsent(endpoint, k -> new Endpoint());
+        }
+        e.record(status, nanos);
+    }
+
+    private Histogram query(String name) {
+        Histogram histogram = queries.get(name);
+        if (histogram == null) {
+            histogram = queries.computeIfAbsent(name, k -> new Histogram());
+        }
+        return histogram;
+    }
+
+    public <T> T time(String query, Supplier<T> call) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.get();
+            failed = false;
+            return result;
+        } finally {
+            query(query).record(System.nanoTime() - start, failed);
+        }
+    }
+
+    public void run(String query, Runnable call) {
+        time(query, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    public Map<String, Map<String, LatencyStats>> snapshot() {
+        Map<String, LatencyStats> requests = new TreeMap<>();
+        for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+            LatencyStats stats = entry.getValue().histogram.stats();
+            Map<Integer, Long> statuses = new TreeMap<>();
+            entry.getValue().statuses.forEach((status, count) -> statuses.put(status, count.sum()));
+            stats.setStatuses(statuses);
+            requests.put(entry.getKey(), stats);
+        }
+        Map<String, LatencyStats> queryStats = new TreeMap<>();
+        queries.forEach((name, histogram) -> queryStats.put(name, histogram.stats()));
+
+        Map<String, Map<String, LatencyStats>> result = new TreeMap<>();
+        result.put("requests", requests);
+        result.put("queries", queryStats);
+        return result;
+    }
+
+    public String prometheus() {
+        StringBuilder out = new StringBuilder();
+        out.append("# TYPE http_requests_total counter\n");
+        new TreeMap<>(endpoints).forEach((endpoint, e) ->
+                new TreeMap<>(e.statuses).forEach((status, count) ->
+                        out.append("http_requests_total{endpoint=\"").append(escape(endpoint))
+                                .append("\",status=\"").append(status).append("\"} ")
+                                .append(count.sum()).append('\n')));
+
+        out.append("# TYPE http_request_duration_seconds histogram\n");
+        new TreeMap<>(endpoints).forEach((endpoint, e) -> histogram(out,
+                "http_request_duration_seconds", "endpoint", endpoint, e.histogram));
+
+        out.append("# TYPE db_query_errors_total counter\n");
+        new TreeMap<>(queries).forEach((name, histogram) ->
+                out.append("db_query_errors_total{query=\"").append(escape(name)).append("\"} ")
+                        .append(histogram.errors()).append('\n'));
+
+        out.append("# TYPE db_query_duration_seconds histogram\n");
+        new TreeMap<>(queries).forEach((name, histogram) -> histogram(out,
+                "db_query_duration_seconds", "query", name, histogram));
+        return out.toString();
+    }
+
+    private static void histogram(StringBuilder out, String metric, String label, String value,
+                                  Histogram histogram) {
+        String labels = label + "=\"" + escape(value) + "\"";
+        long[] counts = histogram.counts();
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            String le = i < Histogram.BOUNDS_MICROS.length ? BigDecimal.valueOf(
+                    Histogram.BOUNDS_MICROS[i]).movePointLeft(6).toPlainString() : "+Inf";
+            out.append(metric).append("_bucket{").append(labels).append(",le=\"").append(le)
+                    .append("\"} ").append(cumulative).append('\n');
+        }
+        out.append(metric).append("_sum{").append(labels).append("} ")
+                .append(histogram.sumNanos() / 1e9).append('\n');
+        out.append(metric).append("_count{").append(labels).append("} ")
+                .append(cumulative).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,19 @@
+package tp.db.metrics;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+@Configuration
+public class MetricsConfig extends WebMvcConfigurerAdapter {
+    private final RequestMetricsInterceptor interceptor;
+
+    public MetricsConfig(RequestMetricsInterceptor interceptor) {
+        this.interceptor = interceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(interceptor).addPathPatterns("/api/**");
+    }
+}
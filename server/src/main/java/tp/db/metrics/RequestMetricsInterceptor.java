@@ -0,0 +1,46 @@
+package tp.db.metrics;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Times every controller method and records it under "METHOD /path/{pattern}", so that all
+ * requests for the same endpoint share one histogram regardless of path variables.
+ */
+@Component
+public class RequestMetricsInterceptor extends HandlerInterceptorAdapter {
+    private static final String START = RequestMetricsInterceptor.class.getName() + ".start";
+
+    private final Metrics metrics;
+
+    public RequestMetricsInterceptor(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response,
+                             Object handler) {
+        // Streamed responses pass through here again once written; time them from the start.
+        if (handler instanceof HandlerMethod && request.getAttribute(START) == null) {
+            request.setAttribute(START, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+                                Object handler, Exception ex) {
+        Object start = request.getAttribute(START);
+        if (start == null) {
+            return;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        metrics.recordRequest(request.getMethod() + " " + pattern,
+                ex == null ? response.getStatus() : 500, System.nanoTime() - (Long) start);
+    }
+}
@@ -0,0 +1,165 @@
+package tp.db.migrations;
+
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Statement;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies classpath:db/migration/V{version}__{description}.sql scripts in version order
+ * and records them in schema_version. Scripts that build indexes CONCURRENTLY or COMMIT
+ * batches of a long update cannot run inside a transaction, so they are executed statement
+ * by statement in autocommit mode.
+ * Scripts may refer to configuration properties as ${name:default}; these are resolved when
+ * the script is applied, so changing such a property later has no effect on an existing schema.
+ *
+ * Instances starting together take turns under a session advisory lock, so each script is
+ * applied once. A CONCURRENTLY build that fails leaves an invalid index behind, which IF NOT
+ * EXISTS would then keep: invalid indexes the script creates are dropped before it runs, and
+ * its version is only recorded once all of them are valid.
+ */
+@Component
+public class MigrationRunner {
+    private static final Pattern NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+    private static final Pattern CONCURRENT_INDEX = Pattern.compile("CREATE\\s+(?:UNIQUE\\s+)?" +
+            "INDEX\\s+CONCURRENTLY\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?(\\w+)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern COMMIT = Pattern.compile("\\bCOMMIT\\b",
+            Pattern.CASE_INSENSITIVE);
+    private static final long LOCK = "schema_version".hashCode();
+
+    private final JdbcTemplate template;
+    private final TransactionTemplate transaction;
+    private final Environment environment;
+
+    public MigrationRunner(JdbcTemplate template, PlatformTransactionManager transactionManager,
+                           Environment environment) {
+        this.template = template;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.environment = environment;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        template.execute((ConnectionCallback<Void>) con -> {
+            try (Statement st = con.createStatement()) {
+                st.execute("SELECT pg_advisory_lock(" + LOCK + ")");
+                try {
+                    applyPending();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                } finally {
+                    st.execute("SELECT pg_advisory_unlock(" + LOCK + ")");
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Runs with the lock held by a connection of its own; the scripts use others.
+     */
+    private void applyPending() throws IOException {
+        template.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                "version INT NOT NULL PRIMARY KEY, description TEXT NOT NULL, " +
+                "installed_on TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        Set<Integer> applied = new HashSet<>(template.queryForList(
+                "SELECT version FROM schema_version", Integer.class));
+
+        for (Map.Entry<Integer, Resource> migration : findMigrations().entrySet()) {
+            if(applied.contains(migration.getKey())) {
+                continue;
+            }
+            apply(migration.getKey(), migration.getValue());
+        }
+    }
+
+    private SortedMap<Integer, Resource> findMigrations() throws IOException {
+        SortedMap<Integer, Resource> result = new TreeMap<>();
+        Resource[] resources = new PathMatchingResourcePatternResolver()
+                .getResources("classpath:db/migration/*.sql");
+        for (Resource resource : resources) {
+            Matcher matcher = NAME.matcher(resource.getFilename());
+            if(!matcher.matches()) {
+                throw new IllegalStateException(String.format("Bad migration name %s",
+                        resource.getFilename()));
+            }
+            if(result.put(Integer.parseInt(matcher.group(1)), resource) != null) {
+                throw new IllegalStateException(String.format("Duplicate migration version %s",
+                        matcher.group(1)));
+            }
+        }
+        return result;
+    }
+
+    private void apply(final int version, Resource resource) throws IOException {
+        String script = environment.resolveRequiredPlaceholders(
+                StreamUtils.copyToString(resource.getInputStream(), StandardCharsets.UTF_8));
+        final List<String> statements = new ArrayList<>();
+        ScriptUtils.splitSqlScript(script, ';', statements);
+        final Matcher matcher = NAME.matcher(resource.getFilename());
+        matcher.matches();
+        final String description = matcher.group(2);
+
+        if(script.toUpperCase(Locale.ROOT).contains("CONCURRENTLY")
+                || COMMIT.matcher(script).find()) {
+            List<String> indexes = new ArrayList<>();
+            Matcher index = CONCURRENT_INDEX.matcher(script);
+            while (index.find()) {
+                indexes.add(index.group(1));
+            }
+            for (String name : indexes) {
+                if(Boolean.FALSE.equals(valid(name))) {
+                    template.execute("DROP INDEX CONCURRENTLY IF EXISTS " + name);
+                }
+            }
+            for (String statement : statements) {
+                template.execute(statement);
+            }
+            for (String name : indexes) {
+                if(!Boolean.TRUE.equals(valid(name))) {
+                    throw new IllegalStateException(String.format("Index %s of migration %s " +
+                            "was not built", name, resource.getFilename()));
+                }
+            }
+            record(version, description);
+            return;
+        }
+        transaction.execute(status -> {
+            for (String statement : statements) {
+                template.execute(statement);
+            }
+            record(version, description);
+            return null;
+        });
+    }
+
+    /**
+     * Null if the index does not exist.
+     */
+    private Boolean valid(String index) {
+        List<Boolean> result = template.queryForList("SELECT indisvalid FROM pg_index " +
+                "WHERE indexrelid = to_regclass(?)", Boolean.class, index);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    private void record(int version, String description) {
+        template.update("INSERT INTO schema_version(version, description) VALUES (?, ?)",
+                version, description);
+    }
+}
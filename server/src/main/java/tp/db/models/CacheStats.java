@@ -0,0 +1,37 @@
+package tp.db.models;
+
+public class CacheStats {
+    private long hits;
+    private long misses;
+    private long size;
+
+    public CacheStats(long hits, long misses, long size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+}
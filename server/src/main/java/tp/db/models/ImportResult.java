@@ -0,0 +1,27 @@
+package tp.db.models;
+
+public class ImportResult {
+    private String entity;
+    private long rows;
+
+    public ImportResult(String entity, long rows) {
+        this.entity = entity;
+        this.rows = rows;
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public void setEntity(String entity) {
+        this.entity = entity;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+}
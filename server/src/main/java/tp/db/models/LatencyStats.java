@@ -0,0 +1,81 @@
+package tp.db.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Map;
+
+public class LatencyStats {
+    private long count;
+    private long errors;
+    private long meanMicros;
+    private long p50Micros;
+    private long p95Micros;
+    private long p99Micros;
+    private long maxMicros;
+    private Map<Integer, Long> statuses;
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public void setErrors(long errors) {
+        this.errors = errors;
+    }
+
+    public long getMeanMicros() {
+        return meanMicros;
+    }
+
+    public void setMeanMicros(long meanMicros) {
+        this.meanMicros = meanMicros;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public void setP50Micros(long p50Micros) {
+        this.p50Micros = p50Micros;
+    }
+
+    public long getP95Micros() {
+        return p95Micros;
+    }
+
+    public void setP95Micros(long p95Micros) {
+        this.p95Micros = p95Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public void setP99Micros(long p99Micros) {
+        this.p99Micros = p99Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    public void setMaxMicros(long maxMicros) {
+        this.maxMicros = maxMicros;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Map<Integer, Long> getStatuses() {
+        return statuses;
+    }
+
+    public void setStatuses(Map<Integer, Long> statuses) {
+        this.statuses = statuses;
+    }
+}
@@ -0,0 +1,25 @@
+package tp.db.models;
+
+import java.util.List;
+
+/**
+ * The rows of one page of a listing and the cursor for the rows after them, null when the
+ * page did not fill its limit.
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final String next;
+
+    public Page(List<T> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,94 @@
+package tp.db.models;
+
+public class PoolStatus {
+    private int maximum;
+    private int total;
+    private int active;
+    private int idle;
+    private int pending;
+    private long acquired;
+    private long acquireMeanMicros;
+    private long acquireMaxMicros;
+    private long timeouts;
+    private long usageMeanMillis;
+
+    public int getMaximum() {
+        return maximum;
+    }
+
+    public void setMaximum(int maximum) {
+        this.maximum = maximum;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public void setActive(int active) {
+        this.active = active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public void setIdle(int idle) {
+        this.idle = idle;
+    }
+
+    public int getPending() {
+        return pending;
+    }
+
+    public void setPending(int pending) {
+        this.pending = pending;
+    }
+
+    public long getAcquired() {
+        return acquired;
+    }
+
+    public void setAcquired(long acquired) {
+        this.acquired = acquired;
+    }
+
+    public long getAcquireMeanMicros() {
+        return acquireMeanMicros;
+    }
+
+    public void setAcquireMeanMicros(long acquireMeanMicros) {
+        this.acquireMeanMicros = acquireMeanMicros;
+    }
+
+    public long getAcquireMaxMicros() {
+        return acquireMaxMicros;
+    }
+
+    public void setAcquireMaxMicros(long acquireMaxMicros) {
+        this.acquireMaxMicros = acquireMaxMicros;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public void setTimeouts(long timeouts) {
+        this.timeouts = timeouts;
+    }
+
+    public long getUsageMeanMillis() {
+        return usageMeanMillis;
+    }
+
+    public void setUsageMeanMillis(long usageMeanMillis) {
+        this.usageMeanMillis = usageMeanMillis;
+    }
+}
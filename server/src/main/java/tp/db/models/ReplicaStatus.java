@@ -0,0 +1,58 @@
+package tp.db.models;
+
+public class ReplicaStatus {
+    private String url;
+    private int weight;
+    private boolean healthy;
+    private long connections;
+    private long failures;
+
+    public ReplicaStatus(String url, int weight, boolean healthy, long connections,
+                         long failures) {
+        this.url = url;
+        this.weight = weight;
+        this.healthy = healthy;
+        this.connections = connections;
+        this.failures = failures;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    public void setHealthy(boolean healthy) {
+        this.healthy = healthy;
+    }
+
+    public long getConnections() {
+        return connections;
+    }
+
+    public void setConnections(long connections) {
+        this.connections = connections;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public void setFailures(long failures) {
+        this.failures = failures;
+    }
+}
@@ -0,0 +1,57 @@
+package tp.db.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A thread or post matching a search, with its rank and the cursor to pass as since to get
+ * the hits ranked after it.
+ */
+public class SearchHit {
+    private String type;
+    private float rank;
+    private String cursor;
+    private Thread thread;
+    private Post post;
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public float getRank() {
+        return rank;
+    }
+
+    public void setRank(float rank) {
+        this.rank = rank;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Thread getThread() {
+        return thread;
+    }
+
+    public void setThread(Thread thread) {
+        this.thread = thread;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Post getPost() {
+        return post;
+    }
+
+    public void setPost(Post post) {
+        this.post = post;
+    }
+}
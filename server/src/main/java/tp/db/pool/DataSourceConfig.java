@@ -0,0 +1,71 @@
+package tp.db.pool;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+@Configuration
+@EnableConfigurationProperties(ReplicaProperties.class)
+public class DataSourceConfig {
+    /**
+     * Defaults applied here can be overridden with spring.datasource.hikari.*, which is bound
+     * after this method returns.
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties,
+                                              PoolMetrics metrics) {
+        HikariDataSource dataSource = (HikariDataSource) properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class).build();
+        dataSource.setPoolName("db");
+        dataSource.setMaximumPoolSize(Runtime.getRuntime().availableProcessors() * 2 + 1);
+        dataSource.addDataSourceProperty("prepareThreshold", "1");
+        dataSource.addDataSourceProperty("preparedStatementCacheQueries", "512");
+        dataSource.addDataSourceProperty("preparedStatementCacheSizeMiB", "8");
+        dataSource.setMetricsTrackerFactory(metrics);
+        return dataSource;
+    }
+
+    @Bean
+    public ReadRouting readRouting(ReplicaProperties properties) {
+        return new ReadRouting(properties.getReplicas().stream()
+                .anyMatch(replica -> replica.getWeight() > 0));
+    }
+
+    @Bean
+    public ReadRoutingDataSource readRoutingDataSource(HikariDataSource primaryDataSource,
+                                                       ReplicaProperties properties,
+                                                       ReadRouting readRouting) {
+        return new ReadRoutingDataSource(primaryDataSource, properties, readRouting);
+    }
+
+    /**
+     * The data source behind JdbcTemplate and the transaction manager: the primary pool itself
+     * unless db.read.replicas are configured.
+     */
+    @Bean(destroyMethod = "")
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource,
+                                 ReadRoutingDataSource readRoutingDataSource) {
+        if (!readRoutingDataSource.hasReplicas()) {
+            return primaryDataSource;
+        }
+        return new LazyConnectionDataSourceProxy(readRoutingDataSource);
+    }
+
+    @Bean
+    public FilterRegistrationBean readRoutingFilter(ReadRouting readRouting) {
+        FilterRegistrationBean registration =
+                new FilterRegistrationBean(new ReadRoutingFilter(readRouting));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+}
@@ -0,0 +1,71 @@
+package tp.db.pool;
+
+import com.zaxxer.hikari.metrics.MetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.springframework.stereotype.Component;
+import tp.db.models.PoolStatus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Receives connection acquire/usage timings from the Hikari pool and keeps the pool's own
+ * occupancy snapshot, so both can be reported next to the service status.
+ */
+@Component
+public class PoolMetrics implements MetricsTrackerFactory {
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAccumulator acquireMaxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder released = new LongAdder();
+    private final LongAdder usageMillis = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private volatile PoolStats poolStats;
+
+    @Override
+    public MetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new MetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquired.increment();
+                acquireNanos.add(elapsedAcquiredNanos);
+                acquireMaxNanos.accumulate(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                released.increment();
+                usageMillis.add(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    public PoolStatus status(int maximum) {
+        PoolStatus status = new PoolStatus();
+        status.setMaximum(maximum);
+        PoolStats stats = poolStats;
+        if (stats != null) {
+            status.setTotal(stats.getTotalConnections());
+            status.setActive(stats.getActiveConnections());
+            status.setIdle(stats.getIdleConnections());
+            status.setPending(stats.getPendingThreads());
+        }
+        long count = acquired.sum();
+        status.setAcquired(count);
+        status.setAcquireMeanMicros(count == 0 ? 0 :
+                TimeUnit.NANOSECONDS.toMicros(acquireNanos.sum() / count));
+        status.setAcquireMaxMicros(TimeUnit.NANOSECONDS.toMicros(acquireMaxNanos.get()));
+        status.setTimeouts(timeouts.sum());
+        long releases = released.sum();
+        status.setUsageMeanMillis(releases == 0 ? 0 : usageMillis.sum() / releases);
+        return status;
+    }
+}
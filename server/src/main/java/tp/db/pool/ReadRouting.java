@@ -0,0 +1,45 @@
+package tp.db.pool;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Decides per transaction whether its connection may come from a replica: only read-only
+ * transactions qualify, and only until the current request has written anything (or asked
+ * for its reads to see its own writes), after which it stays on the primary.
+ */
+public class ReadRouting {
+    private final boolean enabled;
+    private final ThreadLocal<Boolean> pinned = new ThreadLocal<>();
+
+    public ReadRouting(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether the current transaction reads from a replica, in which case what it reads may
+     * lag behind the primary and must not be cached.
+     */
+    public boolean readsReplica() {
+        return mayReadReplica()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    /**
+     * Whether read-only transactions of the current request may still go to a replica.
+     */
+    public boolean mayReadReplica() {
+        return enabled && pinned.get() == null;
+    }
+
+    public void pinPrimary() {
+        pinned.set(Boolean.TRUE);
+    }
+
+    public void reset() {
+        pinned.remove();
+    }
+}
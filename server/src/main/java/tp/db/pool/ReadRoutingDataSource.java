@@ -0,0 +1,163 @@
+package tp.db.pool;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import tp.db.models.ReplicaStatus;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands out replica connections to read-only transactions, picking among the healthy replicas
+ * by weight, and primary connections to everything else. A replica that fails to give a
+ * connection is taken out of rotation at once and the transaction runs on the primary; a
+ * background check puts it back once it answers again.
+ *
+ * The choice is made when the first statement runs, so this sits behind a
+ * LazyConnectionDataSourceProxy: by then the transaction's read-only flag is known.
+ */
+public class ReadRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+    private final HikariDataSource primary;
+    private final ReadRouting routing;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final ScheduledExecutorService healthCheck;
+
+    private static class Replica {
+        private final String url;
+        private final int weight;
+        private final HikariDataSource dataSource;
+        private final LongAdder connections = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private volatile boolean healthy = true;
+
+        private Replica(String url, int weight, HikariDataSource dataSource) {
+            this.url = url;
+            this.weight = weight;
+            this.dataSource = dataSource;
+        }
+    }
+
+    public ReadRoutingDataSource(HikariDataSource primary, ReplicaProperties properties,
+                                 ReadRouting routing) {
+        this.primary = primary;
+        this.routing = routing;
+        for (ReplicaProperties.Replica replica : properties.getReplicas()) {
+            if (replica.getWeight() <= 0) {
+                continue;
+            }
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("db-replica-" + replicas.size());
+            dataSource.setJdbcUrl(replica.getUrl());
+            dataSource.setUsername(replica.getUsername() != null ? replica.getUsername() :
+                    primary.getUsername());
+            dataSource.setPassword(replica.getPassword() != null ? replica.getPassword() :
+                    primary.getPassword());
+            dataSource.setMaximumPoolSize(primary.getMaximumPoolSize());
+            dataSource.setConnectionTimeout(properties.getConnectionTimeoutMillis());
+            dataSource.setInitializationFailFast(false);
+            dataSource.setReadOnly(true);
+            dataSource.setDataSourceProperties(primary.getDataSourceProperties());
+            replicas.add(new Replica(replica.getUrl(), replica.getWeight(), dataSource));
+        }
+        if (replicas.isEmpty()) {
+            healthCheck = null;
+        } else {
+            healthCheck = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "db-replica-health");
+                thread.setDaemon(true);
+                return thread;
+            });
+            healthCheck.scheduleWithFixedDelay(this::checkReplicas, 0,
+                    properties.getHealthCheckMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (routing.readsReplica()) {
+            Replica replica = choose();
+            if (replica != null) {
+                try {
+                    Connection connection = replica.dataSource.getConnection();
+                    replica.connections.increment();
+                    return connection;
+                } catch (SQLException ex) {
+                    replica.failures.increment();
+                    replica.healthy = false;
+                }
+            }
+        } else if (routing.isEnabled()) {
+            routing.pinPrimary();
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    private Replica choose() {
+        int total = 0;
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                total += replica.weight;
+            }
+        }
+        if (total == 0) {
+            return null;
+        }
+        int pick = ThreadLocalRandom.current().nextInt(total);
+        for (Replica replica : replicas) {
+            if (replica.healthy && (pick -= replica.weight) < 0) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                healthy = connection.isValid(1);
+            } catch (SQLException ex) {
+                healthy = false;
+            }
+            if (!healthy) {
+                replica.failures.increment();
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    public List<ReplicaStatus> status() {
+        List<ReplicaStatus> result = new ArrayList<>();
+        for (Replica replica : replicas) {
+            result.add(new ReplicaStatus(replica.url, replica.weight, replica.healthy,
+                    replica.connections.sum(), replica.failures.sum()));
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        if (healthCheck != null) {
+            healthCheck.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            replica.dataSource.close();
+        }
+    }
+}
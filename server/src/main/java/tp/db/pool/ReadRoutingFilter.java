@@ -0,0 +1,44 @@
+package tp.db.pool;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Starts every request with replica reads allowed, unless it carries
+ * X-Read-Your-Writes: true, which keeps all of its reads on the primary so that they see
+ * what the client wrote in an earlier request.
+ *
+ * Requests with If-None-Match stay on the primary too: only reads that cannot come from a
+ * replica get an ETag, so a revalidation answered from a replica would lose its tag. A
+ * match is answered from the version stamps without a query.
+ */
+public class ReadRoutingFilter extends OncePerRequestFilter {
+    public static final String HEADER = "X-Read-Your-Writes";
+
+    private final ReadRouting routing;
+
+    public ReadRoutingFilter(ReadRouting routing) {
+        this.routing = routing;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain chain) throws ServletException, IOException {
+        routing.reset();
+        if (Boolean.parseBoolean(request.getHeader(HEADER))
+                || request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            routing.pinPrimary();
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            routing.reset();
+        }
+    }
+}
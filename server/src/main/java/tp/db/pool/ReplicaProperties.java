@@ -0,0 +1,88 @@
+package tp.db.pool;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read replicas, e.g.
+ *
+ *   db.read.replicas[0].url=jdbc:postgresql://localhost:5433/docker
+ *   db.read.replicas[0].weight=2
+ *
+ * Username and password default to the primary's.
+ *
+ * Responses only carry ETags when the request cannot read a replica: with replicas a client
+ * gets its first tag from a request sent with X-Read-Your-Writes: true, and requests with
+ * If-None-Match are kept on the primary.
+ */
+@ConfigurationProperties(prefix = "db.read")
+public class ReplicaProperties {
+    private List<Replica> replicas = new ArrayList<>();
+    private long healthCheckMillis = 2000;
+    private long connectionTimeoutMillis = 1000;
+
+    public static class Replica {
+        private String url;
+        private String username;
+        private String password;
+        private int weight = 1;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public void setWeight(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(List<Replica> replicas) {
+        this.replicas = replicas;
+    }
+
+    public long getHealthCheckMillis() {
+        return healthCheckMillis;
+    }
+
+    public void setHealthCheckMillis(long healthCheckMillis) {
+        this.healthCheckMillis = healthCheckMillis;
+    }
+
+    public long getConnectionTimeoutMillis() {
+        return connectionTimeoutMillis;
+    }
+
+    public void setConnectionTimeoutMillis(long connectionTimeoutMillis) {
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+    }
+}
@@ -0,0 +1,8 @@
+-- Post search goes through the thread, the partition key, so that a forum's posts are
+-- searched in the partitions of its threads only. btree_gin lets the GIN index lead with
+-- the thread. Like post_search it is built on the partitioned table: writes to post wait
+-- while it is built, reads go on.
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+
+CREATE INDEX IF NOT EXISTS post_thread_search ON post USING GIN (thread, search);
+DROP INDEX IF EXISTS post_search;
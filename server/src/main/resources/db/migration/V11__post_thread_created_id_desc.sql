@@ -0,0 +1,4 @@
+-- Descending flat listings order by created ascending and id descending, an order neither
+-- direction of post_thread_created_id gives. Like post_thread_search it is built on the
+-- partitioned table: writes to post wait while it is built, reads go on.
+CREATE INDEX IF NOT EXISTS post_thread_created_id_desc ON post (thread, created, id DESC);
@@ -58,3 +58,24 @@ CREATE TABLE IF NOT EXISTS vote (
   FOREIGN KEY (thread) REFERENCES thread (id)
 );
 
+CREATE TABLE IF NOT EXISTS forum_users (
+  forum    TEXT         NOT NULL,
+  nickname VARCHAR(50)  NOT NULL,
+  fullname VARCHAR(255) NOT NULL,
+  email    VARCHAR(50)  NOT NULL,
+  about    TEXT,
+  PRIMARY KEY (forum, nickname),
+  FOREIGN KEY (nickname) REFERENCES users (nickname),
+  FOREIGN KEY (forum) REFERENCES forum (slug)
+);
+
+CREATE INDEX IF NOT EXISTS forum_users_forum_lower_nickname ON forum_users
+  (forum, (lower(nickname COLLATE "ucs_basic")));
+CREATE INDEX IF NOT EXISTS forum_users_nickname ON forum_users (nickname);
+
+INSERT INTO forum_users (forum, nickname, fullname, email, about)
+  SELECT p.forum, u.nickname, u.fullname, u.email, u.about FROM users u
+    JOIN (SELECT forum, author FROM thread UNION SELECT forum, author FROM post) p
+    ON (p.author = u.nickname)
+  WHERE NOT EXISTS (SELECT 1 FROM forum_users)
+  ON CONFLICT DO NOTHING;
@@ -0,0 +1,7 @@
+CREATE INDEX CONCURRENTLY IF NOT EXISTS post_thread_created_id ON post (thread, created, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS post_thread_path ON post (thread, path);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS post_thread_roots ON post (thread, id) WHERE parent = 0;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS thread_forum_created ON thread (forum, created);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS vote_thread ON vote (thread);
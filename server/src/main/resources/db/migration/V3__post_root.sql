@@ -0,0 +1,40 @@
+-- root is added as a plain nullable column, which is a catalog change. A trigger fills it for
+-- posts created from now on and existing rows are filled in committed batches. NOT NULL is
+-- then proved by a check constraint that is validated without blocking writes, which lets
+-- SET NOT NULL skip its own scan under the exclusive lock. The script may be run again after
+-- a failure and picks up where it stopped.
+ALTER TABLE post ADD COLUMN IF NOT EXISTS root BIGINT;
+
+CREATE OR REPLACE FUNCTION post_root() RETURNS TRIGGER LANGUAGE plpgsql AS 'BEGIN
+  NEW.root := COALESCE(NEW.root, NEW.path[1]);
+  RETURN NEW;
+END';
+
+DROP TRIGGER IF EXISTS post_root ON post;
+CREATE TRIGGER post_root BEFORE INSERT ON post FOR EACH ROW EXECUTE PROCEDURE post_root();
+
+DO 'DECLARE
+  last BIGINT := 0;
+  upto BIGINT;
+BEGIN
+  LOOP
+    SELECT MAX(id) INTO upto FROM (SELECT id FROM post WHERE id > last ORDER BY id
+      LIMIT ${db.migrations.batch:10000}) b;
+    EXIT WHEN upto IS NULL;
+    UPDATE post SET root = path[1] WHERE id > last AND id <= upto AND root IS NULL;
+    COMMIT;
+    last := upto;
+  END LOOP;
+END';
+
+DO 'BEGIN
+  IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = ''post_root_not_null'') THEN
+    ALTER TABLE post ADD CONSTRAINT post_root_not_null CHECK (root IS NOT NULL) NOT VALID;
+  END IF;
+END';
+ALTER TABLE post VALIDATE CONSTRAINT post_root_not_null;
+ALTER TABLE post ALTER COLUMN root SET NOT NULL;
+ALTER TABLE post DROP CONSTRAINT post_root_not_null;
+
+DROP TRIGGER post_root ON post;
+DROP FUNCTION post_root();
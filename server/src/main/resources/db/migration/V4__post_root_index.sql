@@ -0,0 +1 @@
+CREATE INDEX CONCURRENTLY IF NOT EXISTS post_thread_root_path ON post (thread, root, path);
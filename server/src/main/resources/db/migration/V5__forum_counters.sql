@@ -0,0 +1,11 @@
+CREATE TABLE forum_counters (
+  forum   TEXT     NOT NULL,
+  shard   SMALLINT NOT NULL,
+  posts   BIGINT   NOT NULL DEFAULT 0,
+  threads INT      NOT NULL DEFAULT 0,
+  PRIMARY KEY (forum, shard),
+  FOREIGN KEY (forum) REFERENCES forum (slug)
+);
+INSERT INTO forum_counters (forum, shard, posts, threads)
+  SELECT slug, 0, posts, threads FROM forum WHERE posts <> 0 OR threads <> 0;
+ALTER TABLE forum DROP COLUMN posts, DROP COLUMN threads;
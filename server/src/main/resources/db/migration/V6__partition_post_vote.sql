@@ -0,0 +1,188 @@
+-- Moves post and vote into tables hash-partitioned by thread while the service keeps running.
+-- The new tables are created empty with their keys and indexes, triggers on the old tables
+-- repeat every change in them from then on, and the existing rows are copied over in
+-- committed batches. Only the final swap locks the old tables, for as long as it takes to
+-- drop and rename them. Each step checks whether post is still a plain table, so the script
+-- may be run again after a failure and picks up where it stopped.
+--
+-- The primary key of a partitioned table has to contain the partition key, so post ids are
+-- kept unique by post_ids, which also tells lookups by id which partition to read.
+DO 'BEGIN
+  IF (SELECT relkind FROM pg_class WHERE oid = ''post''::REGCLASS) <> ''r'' THEN
+    RETURN;
+  END IF;
+
+  CREATE TABLE IF NOT EXISTS post_ids (
+    id     BIGINT NOT NULL PRIMARY KEY,
+    thread INT    NOT NULL,
+    UNIQUE (id, thread)
+  );
+
+  CREATE TABLE IF NOT EXISTS post_partitioned (
+    id        BIGINT      NOT NULL DEFAULT nextval(''post_id_seq''),
+    author    VARCHAR(50) NOT NULL,
+    created   TIMESTAMPTZ NOT NULL,
+    forum     TEXT        NOT NULL,
+    is_edited BOOLEAN     NOT NULL DEFAULT FALSE,
+    message   TEXT        NOT NULL,
+    parent    BIGINT      NOT NULL DEFAULT 0,
+    thread    INT         NOT NULL,
+    path      BIGINT[]    NOT NULL,
+    root      BIGINT      NOT NULL,
+    CONSTRAINT post_partitioned_pkey PRIMARY KEY (id, thread),
+    CONSTRAINT post_partitioned_id_fkey FOREIGN KEY (id, thread)
+      REFERENCES post_ids (id, thread),
+    CONSTRAINT post_partitioned_author_fkey FOREIGN KEY (author) REFERENCES users (nickname),
+    CONSTRAINT post_partitioned_forum_fkey FOREIGN KEY (forum) REFERENCES forum (slug),
+    CONSTRAINT post_partitioned_thread_fkey FOREIGN KEY (thread) REFERENCES thread (id)
+  ) PARTITION BY HASH (thread);
+
+  CREATE TABLE IF NOT EXISTS vote_partitioned (
+    nickname VARCHAR(50) NOT NULL,
+    voice    SMALLINT    NOT NULL,
+    thread   INT         NOT NULL,
+    CONSTRAINT vote_partitioned_pkey PRIMARY KEY (thread, nickname),
+    CONSTRAINT vote_partitioned_nickname_fkey FOREIGN KEY (nickname)
+      REFERENCES users (nickname),
+    CONSTRAINT vote_partitioned_thread_fkey FOREIGN KEY (thread) REFERENCES thread (id)
+  ) PARTITION BY HASH (thread);
+
+  FOR i IN 0..${db.partitions:16} - 1 LOOP
+    EXECUTE format(''CREATE TABLE IF NOT EXISTS post_p%s PARTITION OF post_partitioned
+      FOR VALUES WITH (MODULUS %s, REMAINDER %s)'', i, ${db.partitions:16}, i);
+    EXECUTE format(''CREATE TABLE IF NOT EXISTS vote_p%s PARTITION OF vote_partitioned
+      FOR VALUES WITH (MODULUS %s, REMAINDER %s)'', i, ${db.partitions:16}, i);
+  END LOOP;
+
+  CREATE INDEX IF NOT EXISTS post_partitioned_thread_created_id
+    ON post_partitioned (thread, created, id);
+  CREATE INDEX IF NOT EXISTS post_partitioned_thread_path ON post_partitioned (thread, path);
+  CREATE INDEX IF NOT EXISTS post_partitioned_thread_roots ON post_partitioned (thread, id)
+    WHERE parent = 0;
+  CREATE INDEX IF NOT EXISTS post_partitioned_thread_root_path
+    ON post_partitioned (thread, root, path);
+END';
+
+CREATE OR REPLACE FUNCTION post_copy() RETURNS TRIGGER LANGUAGE plpgsql AS 'BEGIN
+  IF TG_OP = ''INSERT'' THEN
+    INSERT INTO post_ids (id, thread) VALUES (NEW.id, NEW.thread) ON CONFLICT DO NOTHING;
+    INSERT INTO post_partitioned (id, author, created, forum, is_edited, message, parent,
+                                  thread, path, root)
+      VALUES (NEW.id, NEW.author, NEW.created, NEW.forum, NEW.is_edited, NEW.message,
+              NEW.parent, NEW.thread, NEW.path, NEW.root)
+      ON CONFLICT DO NOTHING;
+  ELSE
+    UPDATE post_partitioned SET author = NEW.author, created = NEW.created, forum = NEW.forum,
+      is_edited = NEW.is_edited, message = NEW.message, parent = NEW.parent, path = NEW.path,
+      root = NEW.root
+      WHERE id = NEW.id AND thread = NEW.thread;
+  END IF;
+  RETURN NULL;
+END';
+
+CREATE OR REPLACE FUNCTION vote_copy() RETURNS TRIGGER LANGUAGE plpgsql AS 'BEGIN
+  IF TG_OP = ''DELETE'' THEN
+    DELETE FROM vote_partitioned WHERE thread = OLD.thread AND nickname = OLD.nickname;
+  ELSE
+    INSERT INTO vote_partitioned (nickname, voice, thread)
+      VALUES (NEW.nickname, NEW.voice, NEW.thread)
+      ON CONFLICT (thread, nickname) DO UPDATE SET voice = EXCLUDED.voice;
+  END IF;
+  RETURN NULL;
+END';
+
+DO 'BEGIN
+  IF (SELECT relkind FROM pg_class WHERE oid = ''post''::REGCLASS) <> ''r'' THEN
+    RETURN;
+  END IF;
+  DROP TRIGGER IF EXISTS post_copy ON post;
+  DROP TRIGGER IF EXISTS vote_copy ON vote;
+  CREATE TRIGGER post_copy AFTER INSERT OR UPDATE ON post
+    FOR EACH ROW EXECUTE FUNCTION post_copy();
+  CREATE TRIGGER vote_copy AFTER INSERT OR UPDATE OR DELETE ON vote
+    FOR EACH ROW EXECUTE FUNCTION vote_copy();
+END';
+
+-- A batch share-locks its rows before reading them, so an update in flight either finishes
+-- first and is copied, or waits and is then repeated by its trigger.
+DO 'DECLARE
+  last BIGINT := 0;
+  upto BIGINT;
+BEGIN
+  IF (SELECT relkind FROM pg_class WHERE oid = ''post''::REGCLASS) <> ''r'' THEN
+    RETURN;
+  END IF;
+  LOOP
+    SELECT MAX(id) INTO upto FROM (SELECT id FROM post WHERE id > last ORDER BY id
+      LIMIT ${db.migrations.batch:10000}) b;
+    EXIT WHEN upto IS NULL;
+    PERFORM 1 FROM post WHERE id > last AND id <= upto FOR SHARE;
+    INSERT INTO post_ids (id, thread)
+      SELECT id, thread FROM post WHERE id > last AND id <= upto
+      ON CONFLICT DO NOTHING;
+    INSERT INTO post_partitioned (id, author, created, forum, is_edited, message, parent,
+                                  thread, path, root)
+      SELECT id, author, created, forum, is_edited, message, parent, thread, path, root
+        FROM post WHERE id > last AND id <= upto
+      ON CONFLICT DO NOTHING;
+    COMMIT;
+    last := upto;
+  END LOOP;
+END';
+
+DO 'DECLARE
+  last INT := 0;
+  upto INT;
+BEGIN
+  IF (SELECT relkind FROM pg_class WHERE oid = ''vote''::REGCLASS) <> ''r'' THEN
+    RETURN;
+  END IF;
+  LOOP
+    SELECT MAX(thread) INTO upto FROM (SELECT DISTINCT thread FROM vote WHERE thread > last
+      ORDER BY thread LIMIT ${db.migrations.batch:10000}) b;
+    EXIT WHEN upto IS NULL;
+    PERFORM 1 FROM vote WHERE thread > last AND thread <= upto FOR SHARE;
+    INSERT INTO vote_partitioned (nickname, voice, thread)
+      SELECT nickname, voice, thread FROM vote WHERE thread > last AND thread <= upto
+      ON CONFLICT DO NOTHING;
+    COMMIT;
+    last := upto;
+  END LOOP;
+END';
+
+-- The swap: the triggers have kept the copies complete, so this only waits for the
+-- transactions using the old tables and does not touch their rows.
+DO 'BEGIN
+  IF (SELECT relkind FROM pg_class WHERE oid = ''post''::REGCLASS) <> ''r'' THEN
+    RETURN;
+  END IF;
+  LOCK TABLE post, vote IN ACCESS EXCLUSIVE MODE;
+
+  ALTER SEQUENCE post_id_seq OWNED BY NONE;
+  DROP TABLE post;
+  DROP TABLE vote;
+
+  ALTER TABLE post_partitioned RENAME TO post;
+  ALTER SEQUENCE post_id_seq OWNED BY post.id;
+  ALTER TABLE post RENAME CONSTRAINT post_partitioned_pkey TO post_pkey;
+  ALTER TABLE post RENAME CONSTRAINT post_partitioned_id_fkey TO post_id_fkey;
+  ALTER TABLE post RENAME CONSTRAINT post_partitioned_author_fkey TO post_author_fkey;
+  ALTER TABLE post RENAME CONSTRAINT post_partitioned_forum_fkey TO post_forum_fkey;
+  ALTER TABLE post RENAME CONSTRAINT post_partitioned_thread_fkey TO post_thread_fkey;
+  ALTER INDEX post_partitioned_thread_created_id RENAME TO post_thread_created_id;
+  ALTER INDEX post_partitioned_thread_path RENAME TO post_thread_path;
+  ALTER INDEX post_partitioned_thread_roots RENAME TO post_thread_roots;
+  ALTER INDEX post_partitioned_thread_root_path RENAME TO post_thread_root_path;
+
+  ALTER TABLE vote_partitioned RENAME TO vote;
+  ALTER TABLE vote RENAME CONSTRAINT vote_partitioned_pkey TO vote_pkey;
+  ALTER TABLE vote RENAME CONSTRAINT vote_partitioned_nickname_fkey TO vote_nickname_fkey;
+  ALTER TABLE vote RENAME CONSTRAINT vote_partitioned_thread_fkey TO vote_thread_fkey;
+END';
+
+DROP FUNCTION IF EXISTS post_copy();
+DROP FUNCTION IF EXISTS vote_copy();
+
+ANALYZE post_ids;
+ANALYZE post;
+ANALYZE vote;
@@ -0,0 +1,48 @@
+-- The search columns are plain columns that the DAOs fill through search_vector, so adding
+-- them is a catalog change; existing rows are filled in committed batches. The script may be
+-- run again after a failure and picks up where it stopped.
+CREATE OR REPLACE FUNCTION search_vector(title TEXT, message TEXT) RETURNS TSVECTOR
+  LANGUAGE sql IMMUTABLE AS
+  'SELECT setweight(to_tsvector(''${db.search.config:simple}'', concat(title)), ''A'') ||
+    setweight(to_tsvector(''${db.search.config:simple}'', message), ''B'')';
+
+ALTER TABLE thread ADD COLUMN IF NOT EXISTS search TSVECTOR;
+ALTER TABLE post ADD COLUMN IF NOT EXISTS search TSVECTOR;
+
+DO 'DECLARE
+  last INT := 0;
+  upto INT;
+BEGIN
+  LOOP
+    SELECT MAX(id) INTO upto FROM (SELECT id FROM thread WHERE id > last ORDER BY id
+      LIMIT ${db.search.backfill-batch:10000}) b;
+    EXIT WHEN upto IS NULL;
+    UPDATE thread SET search = search_vector(title, message)
+      WHERE id > last AND id <= upto AND search IS NULL;
+    COMMIT;
+    last := upto;
+  END LOOP;
+END';
+
+DO 'DECLARE
+  last BIGINT := 0;
+  upto BIGINT;
+BEGIN
+  LOOP
+    SELECT MAX(id) INTO upto FROM (SELECT id FROM post WHERE id > last ORDER BY id
+      LIMIT ${db.search.backfill-batch:10000}) b;
+    EXIT WHEN upto IS NULL;
+    UPDATE post SET search = search_vector(NULL, message)
+      WHERE id > last AND id <= upto AND search IS NULL;
+    COMMIT;
+    last := upto;
+  END LOOP;
+END';
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS thread_search ON thread USING GIN (search);
+-- PostgreSQL 12 cannot build an index on a partitioned table concurrently: writes to post
+-- wait while this one is built, reads go on.
+CREATE INDEX IF NOT EXISTS post_search ON post USING GIN (search);
+
+ANALYZE thread;
+ANALYZE post;
@@ -0,0 +1,2 @@
+CREATE INDEX CONCURRENTLY IF NOT EXISTS thread_forum_created_id ON thread (forum, created, id);
+DROP INDEX CONCURRENTLY IF EXISTS thread_forum_created;
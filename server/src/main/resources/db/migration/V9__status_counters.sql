@@ -0,0 +1,15 @@
+-- Row counts for the status endpoint, spread over shard rows like forum_counters. They are
+-- seeded under a lock that holds writes back for the length of the counts, so that no row
+-- is counted twice or missed; instances still running older code keep no counts here.
+CREATE TABLE status_counters (
+  shard   SMALLINT NOT NULL PRIMARY KEY,
+  users   INT      NOT NULL DEFAULT 0,
+  forums  INT      NOT NULL DEFAULT 0,
+  threads INT      NOT NULL DEFAULT 0,
+  posts   BIGINT   NOT NULL DEFAULT 0
+);
+
+LOCK TABLE users, forum, thread, post IN SHARE MODE;
+INSERT INTO status_counters (shard, users, forums, threads, posts)
+  SELECT 0, (SELECT COUNT(*) FROM users), (SELECT COUNT(*) FROM forum),
+         (SELECT COUNT(*) FROM thread), (SELECT COUNT(*) FROM post);
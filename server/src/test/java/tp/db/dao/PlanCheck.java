@@ -0,0 +1,273 @@
+package tp.db.dao;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs EXPLAIN over the statements the DAOs send, built by the same query builders with
+ * sample arguments, and fails if the planner can no longer use the indexes a statement was
+ * tuned for. Sequential scans, bitmap scans and explicit sorts are disabled for the check so
+ * that the result does not depend on how much data the database holds: with few rows per key
+ * the planner would rather sort a bitmap scan of any index. Which of two usable indexes it
+ * picks still follows the statistics, so PlanCheckTest runs the check on sample data shaped
+ * like the real one.
+ *
+ * GIN indexes only support bitmap scans, so searches keep bitmap scans enabled. Within the
+ * small scope of a forum's threads or a thread's posts the forum or thread index may well be
+ * the better plan than a search index, so a forum search is only checked for reading the
+ * posts of each of its threads from one partition, and thread searches are left out.
+ *
+ * On a partitioned table the check accepts the partitions' copies of an index and also fails
+ * if the statement reads more than one of them. Statements that find their partition key
+ * with a subquery or a join are only pruned when they run, so they are run under EXPLAIN
+ * ANALYZE and only the partitions actually read count; a join may read a different partition
+ * for each of its rows, but no more than one each time. Such a statement may name its table
+ * instead of an index when any index of the partition will do.
+ */
+class PlanCheck {
+    private static final String SINCE = "2017-01-01T00:00:00.000Z";
+    private static final Pattern LOOPS = Pattern.compile("loops=(\\d+)\\)");
+
+    private final JdbcTemplate template;
+    private final List<Planned> statements = new ArrayList<>();
+
+    PlanCheck(JdbcTemplate template, String config) {
+        this.template = template;
+        Instant created = Instant.parse(SINCE);
+
+        put(UserDAO.SELECT_BY_NICKNAME, args("nick"), "lower_nicknames");
+        put(UserDAO.SELECT_BY_NICKNAMES, args((Object) new String[] {"a", "b"}),
+                "lower_nicknames");
+        put(ForumDAO.SELECT_BY_SLUG, args("slug"), "lower_slug_index", "forum_counters_pkey");
+        put(ForumDAO.SELECT_BY_SLUGS, args((Object) new String[] {"a", "b"}),
+                "lower_slug_index", "forum_counters_pkey");
+        put(ThreadDAO.SELECT_BY_ID, args(1), "thread_pkey");
+        put(ThreadDAO.SELECT_BY_SLUG, args("slug"), "lower_thread_slug");
+        put(ThreadDAO.SELECT_BY_IDS, args((Object) new Integer[] {1, 2}), "thread_pkey");
+        put(ThreadDAO.SELECT_BY_SLUGS, args((Object) new String[] {"a", "b"}),
+                "lower_thread_slug");
+        put(ThreadDAO.VOTE, args("nick", 1, "nick", 1, 1, 1), "vote_pkey", "thread_pkey");
+        put(PostDAO.SELECT_BY_ID, args(1L, 1L), "post").executed = true;
+
+        for (boolean desc : new boolean[] {false, true}) {
+            String direction = desc ? ".desc" : ".asc";
+            build((sql, params) -> ThreadDAO.appendThreadsQuery("slug", 100, null, null, desc,
+                    sql, params), "thread_forum_created_id", "lower_slug_index");
+            build((sql, params) -> ThreadDAO.appendThreadsQuery("slug", 100, SINCE, null, desc,
+                    sql, params), "thread_forum_created_id");
+            build((sql, params) -> ThreadDAO.appendThreadsQuery("slug", 100, null,
+                    PageCursors.encode("threads" + direction, created, 1), desc, sql, params),
+                    "thread_forum_created_id");
+
+            String flat = desc ? "post_thread_created_id_desc" : "post_thread_created_id";
+            build((sql, params) -> PostDAO.appendPostsQuery(1, 100, null, null, "flat", desc,
+                    sql, params), flat);
+            build((sql, params) -> PostDAO.appendPostsQuery(1, 100, 1L, null, "flat", desc,
+                    sql, params), flat);
+            build((sql, params) -> PostDAO.appendPostsQuery(1, 100, null,
+                    PageCursors.encode("posts.flat" + direction, created, 1L), "flat", desc,
+                    sql, params), flat);
+            build((sql, params) -> PostDAO.appendPostsQuery(1, 100, 1L, null, "tree", desc,
+                    sql, params), "post_thread_path");
+            build((sql, params) -> PostDAO.appendPostsQuery(1, 100, null,
+                    PageCursors.encode("posts.tree" + direction, "1.2"), "tree", desc,
+                    sql, params), "post_thread_path");
+            build((sql, params) -> PostDAO.appendPostsQuery(1, 100, null, null, "parent_tree",
+                    desc, sql, params), "post_thread_roots", "post_thread_root_path");
+            build((sql, params) -> PostDAO.appendPostsQuery(1, 100, null,
+                    PageCursors.encode("posts.parent_tree" + direction, 5001L), "parent_tree",
+                    desc, sql, params), "post_thread_roots", "post_thread_root_path");
+
+            build((sql, params) -> UserDAO.appendUsersQuery("slug", 100, null, null, desc,
+                    sql, params), "forum_users_forum_lower_nickname", "lower_slug_index");
+            build((sql, params) -> UserDAO.appendUsersQuery("slug", 100, "nick", null, desc,
+                    sql, params), "forum_users_forum_lower_nickname");
+        }
+
+        Planned search = build((sql, params) -> SearchDAO.appendSearchQuery(config, "forum",
+                "forum1", "word", 100, null, sql, params), "post");
+        search.bitmap = true;
+        search.executed = true;
+    }
+
+    private static List<Object> args(Object... args) {
+        return Arrays.asList(args);
+    }
+
+    private Planned put(String sql, List<Object> params, String... indexes) {
+        Planned planned = new Planned(sql, params, indexes);
+        statements.add(planned);
+        return planned;
+    }
+
+    private Planned build(Builder builder, String... indexes) {
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        builder.append(sql, params);
+        return put(sql.toString(), params, indexes);
+    }
+
+    void check() {
+        List<String> failures = template.execute((ConnectionCallback<List<String>>) con -> {
+            List<String> result = new ArrayList<>();
+            try (Statement st = con.createStatement()) {
+                st.execute("SET enable_seqscan = off");
+                st.execute("SET enable_bitmapscan = off");
+                st.execute("SET enable_sort = off");
+                try {
+                    for (Planned planned : statements) {
+                        st.execute(planned.bitmap
+                                ? "SET enable_bitmapscan = on" : "SET enable_bitmapscan = off");
+                        String plan = explain(con, planned);
+                        String read = planned.executed ? executed(plan) : plan;
+                        for (String index : planned.indexes) {
+                            if(used(con, index, plan) == 0) {
+                                result.add(String.format("%s does not use %s:%n%s",
+                                        planned.sql, index, plan));
+                                continue;
+                            }
+                            long partitions = used(con, index, read);
+                            if(partitions > 1 && planned.executed) {
+                                partitions = readsPerLoop(con, index, read);
+                            }
+                            if(partitions > 1) {
+                                result.add(String.format("%s reads %d partitions of %s:%n%s",
+                                        planned.sql, partitions, index, plan));
+                            }
+                        }
+                    }
+                } finally {
+                    st.execute("RESET enable_seqscan");
+                    st.execute("RESET enable_bitmapscan");
+                    st.execute("RESET enable_sort");
+                }
+            }
+            return result;
+        });
+        if(!failures.isEmpty()) {
+            throw new IllegalStateException(String.join("\n", failures));
+        }
+    }
+
+    /**
+     * Binds the sample arguments the way the DAOs do, array arguments as the SQL arrays they
+     * create for them, so that the planner sees the same types.
+     */
+    private static String explain(Connection con, Planned planned) throws SQLException {
+        Object[] params = planned.params.toArray();
+        for (int i = 0; i < params.length; i++) {
+            if(params[i] instanceof String[]) {
+                params[i] = con.createArrayOf("text", (Object[]) params[i]);
+            } else if(params[i] instanceof Integer[]) {
+                params[i] = con.createArrayOf("int4", (Object[]) params[i]);
+            }
+        }
+        StringBuilder plan = new StringBuilder();
+        String explain = planned.executed
+                ? "EXPLAIN (ANALYZE, COSTS OFF, TIMING OFF, SUMMARY OFF) " : "EXPLAIN ";
+        try (PreparedStatement pst = con.prepareStatement(explain + planned.sql)) {
+            new ArgumentPreparedStatementSetter(params).setValues(pst);
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    plan.append(rs.getString(1)).append('\n');
+                }
+            }
+        }
+        return plan.toString();
+    }
+
+    private static String executed(String plan) {
+        StringBuilder result = new StringBuilder();
+        for (String line : plan.split("\n")) {
+            if(!line.contains("(never executed)")) {
+                result.append(line).append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * How many copies of the index the plan reads: one per partition it was not pruned from,
+     * or one if the index is not partitioned.
+     */
+    private static long used(Connection con, String index, String plan) throws SQLException {
+        List<String> partitions = partitionIndexes(con, index);
+        if(partitions.isEmpty()) {
+            return mentions(plan, index) ? 1 : 0;
+        }
+        return partitions.stream().filter(name -> mentions(plan, name)).count();
+    }
+
+    /**
+     * How many partitions of the index an executed plan reads each time the Append over them
+     * runs: the loops of the partitions' scans over the loops of the Append.
+     */
+    private static long readsPerLoop(Connection con, String index, String plan)
+            throws SQLException {
+        List<String> partitions = partitionIndexes(con, index);
+        long reads = 0;
+        long appends = 1;
+        for (String line : plan.split("\n")) {
+            Matcher loops = LOOPS.matcher(line);
+            if(!loops.find()) {
+                continue;
+            }
+            if(line.contains("Append ")) {
+                appends = Math.max(appends, Long.parseLong(loops.group(1)));
+            } else if(partitions.stream().anyMatch(name -> mentions(line, name))) {
+                reads += Long.parseLong(loops.group(1));
+            }
+        }
+        return (reads + appends - 1) / appends;
+    }
+
+    private static boolean mentions(String plan, String index) {
+        return plan.contains(" " + index + " ") || plan.contains(" " + index + "\n");
+    }
+
+    private static List<String> partitionIndexes(Connection con, String index)
+            throws SQLException {
+        List<String> result = new ArrayList<>();
+        try (PreparedStatement pst = con.prepareStatement("SELECT c.relname FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass(?)")) {
+            pst.setString(1, index);
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getString(1));
+                }
+            }
+        }
+        return result;
+    }
+
+    private interface Builder {
+        void append(StringBuilder sql, List<Object> params);
+    }
+
+    private static final class Planned {
+        private final String sql;
+        private final List<Object> params;
+        private final String[] indexes;
+        private boolean bitmap;
+        private boolean executed;
+
+        Planned(String sql, List<Object> params, String[] indexes) {
+            this.sql = sql;
+            this.params = params;
+            this.indexes = indexes;
+        }
+    }
+}
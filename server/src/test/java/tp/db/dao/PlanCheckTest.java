@@ -0,0 +1,52 @@
+package tp.db.dao;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import tp.db.migrations.MigrationRunner;
+
+import java.sql.SQLException;
+
+import static org.junit.Assume.assumeNoException;
+
+/**
+ * Wipes and migrates a scratch database, fills it with sample data and checks the plans
+ * of the DAO statements. The database is wiped first: point test.db.url at one that holds
+ * nothing else. The test is skipped when it cannot connect.
+ */
+public class PlanCheckTest {
+    private static JdbcTemplate template;
+
+    @BeforeClass
+    public static void migrate() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                System.getProperty("test.db.url", "jdbc:postgresql://localhost:5432/docker_test"),
+                System.getProperty("test.db.username", "docker"),
+                System.getProperty("test.db.password", "docker"));
+        try {
+            dataSource.getConnection().close();
+        } catch (SQLException ex) {
+            assumeNoException(ex);
+        }
+        template = new JdbcTemplate(dataSource);
+        template.execute("DROP SCHEMA public CASCADE");
+        template.execute("CREATE SCHEMA public");
+        new MigrationRunner(template, new DataSourceTransactionManager(dataSource),
+                new StandardEnvironment()).migrate();
+        template.execute((ConnectionCallback<Void>) con -> {
+            ScriptUtils.executeSqlScript(con, new ClassPathResource("plan-check-data.sql"));
+            return null;
+        });
+    }
+
+    @Test
+    public void statementsUseTheirIndexes() {
+        new PlanCheck(template, "simple").check();
+    }
+}
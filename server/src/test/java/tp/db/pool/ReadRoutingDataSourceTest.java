@@ -0,0 +1,214 @@
+package tp.db.pool;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionTemplate;
+import tp.db.models.ReplicaStatus;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNoException;
+
+/**
+ * Routes transactions between two running PostgreSQL instances: test.db.url as the primary
+ * and test.db.replica-url as the replica. Any two instances will do, they are told apart by
+ * port. The test is skipped when either cannot be reached.
+ */
+public class ReadRoutingDataSourceTest {
+    private static final String URL = System.getProperty("test.db.url",
+            "jdbc:postgresql://localhost:5432/docker_test");
+    private static final String REPLICA_URL = System.getProperty("test.db.replica-url",
+            "jdbc:postgresql://localhost:5433/docker_test");
+    private static final String USERNAME = System.getProperty("test.db.username", "docker");
+    private static final String PASSWORD = System.getProperty("test.db.password", "docker");
+
+    private static String primaryPort;
+    private static String replicaPort;
+
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+    private ReadRouting routing;
+    private ReadRoutingDataSource routingDataSource;
+    private JdbcTemplate template;
+    private DataSourceTransactionManager transactionManager;
+
+    @BeforeClass
+    public static void connect() {
+        try {
+            primaryPort = port(URL);
+            replicaPort = port(REPLICA_URL);
+        } catch (SQLException ex) {
+            assumeNoException(ex);
+        }
+    }
+
+    private static String port(String url) throws SQLException {
+        try (Connection con = DriverManager.getConnection(url, USERNAME, PASSWORD);
+             Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SHOW port")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    @After
+    public void close() throws Exception {
+        routing.reset();
+        for (AutoCloseable closeable : closeables) {
+            closeable.close();
+        }
+    }
+
+    private void start(long healthCheckMillis, ReplicaProperties.Replica... replicas) {
+        HikariDataSource primary = new HikariDataSource();
+        primary.setJdbcUrl(URL);
+        primary.setUsername(USERNAME);
+        primary.setPassword(PASSWORD);
+        primary.setMaximumPoolSize(2);
+        closeables.add(primary);
+
+        ReplicaProperties properties = new ReplicaProperties();
+        for (ReplicaProperties.Replica replica : replicas) {
+            properties.getReplicas().add(replica);
+        }
+        properties.setHealthCheckMillis(healthCheckMillis);
+        properties.setConnectionTimeoutMillis(250);
+
+        routing = new ReadRouting(true);
+        routingDataSource = new ReadRoutingDataSource(primary, properties, routing);
+        closeables.add(routingDataSource);
+        LazyConnectionDataSourceProxy dataSource =
+                new LazyConnectionDataSourceProxy(routingDataSource);
+        template = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        // The proxy read its connection defaults from the primary, which pins this thread
+        // like a write; requests start with a reset in the filter.
+        routing.reset();
+    }
+
+    private static ReplicaProperties.Replica replica(String url, int weight) {
+        ReplicaProperties.Replica replica = new ReplicaProperties.Replica();
+        replica.setUrl(url);
+        replica.setWeight(weight);
+        return replica;
+    }
+
+    /**
+     * The port of the server the transaction ran on.
+     */
+    private String served(boolean readOnly) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(readOnly);
+        return transaction.execute(status -> template.queryForObject("SHOW port", String.class));
+    }
+
+    @Test
+    public void readOnlyTransactionsReadTheReplica() {
+        start(60000, replica(REPLICA_URL, 1));
+
+        assertEquals(replicaPort, served(true));
+        assertEquals(primaryPort, served(false));
+    }
+
+    @Test
+    public void writesPinTheRestOfTheRequestToThePrimary() {
+        start(60000, replica(REPLICA_URL, 1));
+
+        served(false);
+        assertFalse(routing.mayReadReplica());
+        assertEquals(primaryPort, served(true));
+
+        routing.reset();
+        assertEquals(replicaPort, served(true));
+    }
+
+    @Test
+    public void replicasAreChosenByWeight() {
+        start(60000, replica(REPLICA_URL, 3), replica(URL, 1), replica(REPLICA_URL, 0));
+
+        for (int i = 0; i < 400; i++) {
+            served(true);
+        }
+        List<ReplicaStatus> status = routingDataSource.status();
+        assertEquals(2, status.size());
+        long heavy = status.get(0).getConnections();
+        long light = status.get(1).getConnections();
+        assertEquals(400, heavy + light);
+        assertTrue(String.format("%d of 400 reads went to the replica of weight 3", heavy),
+                heavy > 240 && heavy < 360);
+    }
+
+    @Test
+    public void unreachableReplicaFallsBackToThePrimary() throws InterruptedException {
+        start(50, replica("jdbc:postgresql://localhost:1/docker_test", 1));
+
+        assertEquals(primaryPort, served(true));
+        ReplicaStatus status = routingDataSource.status().get(0);
+        assertFalse(status.isHealthy());
+        assertTrue(status.getFailures() > 0);
+
+        long failures = status.getFailures();
+        for (int i = 0; i < 100 && routingDataSource.status().get(0).getFailures() == failures;
+             i++) {
+            Thread.sleep(50);
+        }
+        assertTrue("The health check keeps probing the replica",
+                routingDataSource.status().get(0).getFailures() > failures);
+        assertEquals(0, routingDataSource.status().get(0).getConnections());
+    }
+
+    @Test
+    public void readYourWritesHeaderKeepsTheRequestOnThePrimary() throws Exception {
+        start(60000, replica(REPLICA_URL, 1));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/user/a/profile");
+        assertEquals(replicaPort, filter(request));
+
+        request.addHeader(ReadRoutingFilter.HEADER, "true");
+        assertEquals(primaryPort, filter(request));
+        assertTrue(routing.mayReadReplica());
+    }
+
+    @Test
+    public void revalidationsStayOnThePrimary() throws Exception {
+        start(60000, replica(REPLICA_URL, 1));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/user/a/profile");
+        request.addHeader("If-None-Match", "\"1-2\"");
+        assertEquals(primaryPort, filter(request));
+    }
+
+    /**
+     * Runs a read-only transaction as the request's handler and returns the port it ran on.
+     */
+    private String filter(MockHttpServletRequest request) throws Exception {
+        String[] port = new String[1];
+        new ReadRoutingFilter(routing).doFilter(request, new MockHttpServletResponse(),
+                new MockFilterChain(new HttpServlet() {
+                    @Override
+                    protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                        port[0] = served(true);
+                    }
+                }));
+        return port[0];
+    }
+}
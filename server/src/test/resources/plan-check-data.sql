@@ -0,0 +1,44 @@
+-- Sample data for PlanCheckTest: 1000 threads in 10 forums, each thread with 10 root posts
+-- and 90 answers to them.
+INSERT INTO users (nickname, fullname, email, about)
+  SELECT 'user' || i, 'User ' || i, 'user' || i || '@mail.ru', 'about'
+    FROM generate_series(1, 1000) i;
+
+INSERT INTO forum (slug, title, "user")
+  SELECT 'forum' || i, 'Forum ' || i, 'user' || i FROM generate_series(1, 10) i;
+
+INSERT INTO forum_counters (forum, shard, posts, threads)
+  SELECT 'forum' || i, 0, 10000, 100 FROM generate_series(1, 10) i;
+
+INSERT INTO thread (id, author, created, forum, message, slug, title, search)
+  SELECT i, 'user' || i, TIMESTAMPTZ '2017-01-01' + i * INTERVAL '1 minute',
+         'forum' || (i % 10 + 1), 'message ' || i, 'thread' || i, 'Thread ' || i,
+         search_vector('Thread ' || i, 'message ' || i)
+    FROM generate_series(1, 1000) i;
+SELECT setval('thread_id_seq', 1000);
+
+CREATE TEMP TABLE plan_check_posts AS
+  SELECT i AS id, (i - 1) % 1000 + 1 AS thread,
+         CASE WHEN i <= 10000 THEN 0 ELSE (i - 1) % 1000 + 1 + 1000 * (i / 1000 % 10) END
+           AS parent
+    FROM generate_series(1, 100000) i;
+
+INSERT INTO post_ids (id, thread) SELECT id, thread FROM plan_check_posts;
+
+INSERT INTO post (id, author, created, forum, message, parent, thread, path, root, search)
+  SELECT p.id, 'user' || (p.id % 1000 + 1), t.created + p.id * INTERVAL '1 second', t.forum,
+         'message ' || p.id, p.parent, p.thread,
+         CASE WHEN p.parent = 0 THEN ARRAY[p.id] ELSE ARRAY[p.parent, p.id] END,
+         CASE WHEN p.parent = 0 THEN p.id ELSE p.parent END,
+         search_vector(NULL, 'message ' || p.id)
+    FROM plan_check_posts p JOIN thread t ON t.id = p.thread;
+SELECT setval('post_id_seq', 100000);
+
+INSERT INTO forum_users (forum, nickname, fullname, email, about)
+  SELECT DISTINCT p.forum, u.nickname, u.fullname, u.email, u.about
+    FROM post p JOIN users u ON u.nickname = p.author;
+
+INSERT INTO vote (nickname, voice, thread)
+  SELECT 'user' || i, 1, (i - 1) % 1000 + 1 FROM generate_series(1, 1000) i;
+
+ANALYZE;